@@ -0,0 +1,225 @@
+class AI {
+	Board board;
+	Puzzle puzzle;
+	State state;
+	BoardIntelligence boardIntelligence;
+	LessGuesswork lessGuesswork;
+	private final Budget budget;
+	private final TranspositionTable deadEnds;
+	private long nodes;
+	private boolean outOfBudget;
+	private SolverStats stats;
+	private int depth;
+	private BranchQueue queue; // null to use firstLineEnding() instead
+	AI(Board board) {
+		this(board, Budget.unlimited(), new TranspositionTable(14));
+	}
+	// The search gives up, returning false, as soon as the budget runs
+	// out. deadEnds may be null to search without one.
+	AI(Board board, Budget budget, TranspositionTable deadEnds) {
+		this.board = board;
+		this.budget = budget;
+		this.deadEnds = deadEnds;
+		puzzle = board.puzzle;
+		state = board.state;
+		boardIntelligence = new BoardIntelligence(board);
+		lessGuesswork = new LessGuesswork(board);
+		lessGuesswork.budget = budget;
+	}
+	/*
+		Depth-first search over the undecided walls. Each wall is first
+		marked and then eliminated, and LessGuesswork follows up on every
+		guess; whatever a dead branch changed is undone by rolling the
+		State's trail back to the checkpoint taken before the guess, so no
+		node ever copies the board.
+	*/
+	public boolean solve() {
+		SolveEvent event = new SolveEvent();
+		if (event.isEnabled() && stats == null)
+			enableStats();
+		event.begin();
+		long start = System.nanoTime();
+		SolvePhaseEvent phase = new SolvePhaseEvent();
+		phase.begin();
+		boolean consistent = lessGuesswork.executeStaticIntuition();
+		long searchStart = endPhase(phase, SolverStats.Phase.STATIC_INTUITION, start);
+		phase = new SolvePhaseEvent();
+		phase.begin();
+		boolean solved = consistent && search();
+		endPhase(phase, SolverStats.Phase.SEARCH, searchStart);
+		// A recording started after we began has no stats to report.
+		if (stats != null && event.shouldCommit()) {
+			event.rows = puzzle.r;
+			event.cols = puzzle.c;
+			event.solved = solved;
+			event.decisions = stats.decisions;
+			event.backtracks = stats.backtracks;
+			event.contradictions = stats.contradictions;
+			event.rejectedMarks = stats.rejectedMarks;
+			event.propagations = stats.totalPropagations();
+			event.maxDepth = stats.maxDepth;
+			event.commit();
+		}
+		return solved;
+	}
+	private long endPhase(SolvePhaseEvent event, SolverStats.Phase phase, long start) {
+		long end = System.nanoTime();
+		if (stats != null)
+			stats.phaseNanos[phase.ordinal()] += end - start;
+		if (event.shouldCommit()) {
+			event.phase = phase.name();
+			event.rows = puzzle.r;
+			event.cols = puzzle.c;
+			event.commit();
+		}
+		return end;
+	}
+	/*
+		solve(), but telling apart a board with no solution from one we
+		ran out of budget on. Either way the board is left holding only
+		what propagation proved before the first guess.
+	*/
+	public SolveResult attempt() {
+		if (solve())
+			return new SolveResult(SolveResult.Status.SOLVED, state);
+		return new SolveResult(outOfBudget() ? SolveResult.Status.TIMED_OUT : SolveResult.Status.UNSOLVABLE, state);
+	}
+	// Starts counting what the solver does; see SolverStats.
+	public SolverStats enableStats() {
+		stats = new SolverStats();
+		state.stats = stats;
+		lessGuesswork.stats = stats;
+		return stats;
+	}
+	public SolverStats getStats() {
+		return stats;
+	}
+	// Picks walls to branch on by heuristic rather than by following
+	// the lowest loose end; null goes back to the default.
+	public void setHeuristic(BranchHeuristic heuristic) {
+		queue = heuristic == null ? null : new BranchQueue(state, heuristic);
+		state.listener = queue;
+	}
+	boolean search() {
+		if (stopped())
+			return false;
+		if (state.loopClosed()) {
+			// A closed loop can't be extended, so this is as far as we get.
+			return boardIntelligence.solved();
+		}
+		int wall = nextWall();
+		if (wall < 0)
+			return boardIntelligence.solved();
+		long hash = state.hash();
+		if (deadEnds != null && deadEnds.contains(hash))
+			return false;
+		long startNodes = nodes++;
+		int checkpoint = state.checkpoint();
+		if (stats != null)
+			enter();
+		if (state.mark(wall) && lessGuesswork.propagate(checkpoint) && search())
+			return leave(true);
+		state.rollback(checkpoint);
+		if (stats != null)
+			stats.backtracks++;
+		if (state.eliminate(wall) && lessGuesswork.propagate(checkpoint) && search())
+			return leave(true);
+		state.rollback(checkpoint);
+		if (stats != null)
+			stats.backtracks++;
+		leave(false);
+		// Only a subtree we actually finished is known to be dead.
+		if (deadEnds != null && !stopped())
+			deadEnds.store(hash, nodes - startNodes);
+		return false;
+	}
+	/*
+		Like solve(), but keeps going after the first loop to count them,
+		stopping as soon as it has found limit of them. The board is put
+		back the way it was before the call.
+	*/
+	public int countSolutions(int limit) {
+		int checkpoint = state.checkpoint();
+		int found = lessGuesswork.executeStaticIntuition() ? count(limit) : 0;
+		state.rollback(checkpoint);
+		return found;
+	}
+	int count(int limit) {
+		if (stopped())
+			return 0;
+		if (state.loopClosed())
+			return boardIntelligence.solved() ? 1 : 0;
+		int wall = nextWall();
+		if (wall < 0)
+			return boardIntelligence.solved() ? 1 : 0;
+		long hash = state.hash();
+		if (deadEnds != null && deadEnds.contains(hash))
+			return 0;
+		long startNodes = nodes++;
+		int found = 0;
+		int checkpoint = state.checkpoint();
+		if (state.mark(wall) && lessGuesswork.propagate(checkpoint))
+			found += count(limit);
+		state.rollback(checkpoint);
+		if (found < limit && state.eliminate(wall) && lessGuesswork.propagate(checkpoint))
+			found += count(limit - found);
+		state.rollback(checkpoint);
+		if (found == 0 && deadEnds != null && !stopped())
+			deadEnds.store(hash, nodes - startNodes);
+		return found;
+	}
+	// Whether the last search stopped because the budget ran out, which
+	// makes a false from it mean "don't know".
+	boolean outOfBudget() {
+		return outOfBudget || lessGuesswork.outOfBudget();
+	}
+	private void enter() {
+		stats.decisions++;
+		if (++depth > stats.maxDepth)
+			stats.maxDepth = depth;
+	}
+	private boolean leave(boolean result) {
+		if (stats != null)
+			depth--;
+		return result;
+	}
+	private boolean stopped() {
+		if (!outOfBudget && (budget.exhausted(nodes) || lessGuesswork.outOfBudget()))
+			outOfBudget = true;
+		return outOfBudget;
+	}
+	/*
+		Extending a loose end is the most forced move there is, so we grow
+		existing segments first. Without one, we start at the cell whose
+		clue is hardest to satisfy.
+	*/
+	int nextWall() {
+		if (queue != null)
+			return queue.best();
+		int end = state.firstLineEnding();
+		if (end >= 0) {
+			for (int i = 0; i < 4; i++) {
+				int e = puzzle.vertexEdge(end, i);
+				if (e >= 0 && state.isUndecided(e))
+					return e;
+			}
+			return -1;
+		}
+		int best = -1;
+		int bestValue = -2;
+		for (int cell = 0; cell < puzzle.cellCount; cell++) {
+			int value = puzzle.clue(cell);
+			if (value <= bestValue)
+				continue;
+			for (int side = 0; side < 4; side++) {
+				int e = puzzle.cellEdge(cell, side);
+				if (state.isUndecided(e)) {
+					best = e;
+					bestValue = value;
+					break;
+				}
+			}
+		}
+		return best;
+	}
+}
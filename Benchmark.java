@@ -0,0 +1,178 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/*
+	Times the hot paths of the solver on every puzzle in a file (Slither.in
+	by default) and on generated square boards from 5x5 up to 400x400.
+
+	Each benchmark is warmed up and then run in a loop for a fixed amount
+	of time. We report the mean time per operation and, from the JVM's
+	per-thread allocation counter, how many bytes each operation allocated
+	and what allocation rate that comes to.
+
+	Last, it solves a corpus once with each way of picking walls to
+	branch on, and reports how many guesses and how long each needed in
+	all. Propagation alone solves everything in Slither.in, so by default
+	the corpus is 12 generated 12x12 puzzles (seed 42), the same every
+	run; a second file can be given instead.
+
+		java Benchmark [file] [corpus]
+*/
+class Benchmark {
+	static final long WARMUP_NANOS = 200_000_000L;
+	static final long MEASURE_NANOS = 500_000_000L;
+	static final int[] SIZES = {5, 10, 25, 50, 100, 200, 400};
+	static final int CORPUS_SIZE = 12, CORPUS_SIDE = 12;
+	static final long CORPUS_SEED = 42;
+	static volatile long sink; // keeps the JIT from discarding results
+
+	interface Op {
+		long run();
+	}
+
+	public static void main(String[] args) throws IOException {
+		String fileName = args.length > 0 ? args[0] : "Slither.in";
+		System.out.printf("%-40s %-18s %14s %12s %10s%n", "Benchmark", "Board", "ns/op", "B/op", "MB/s");
+		PuzzleReader reader = new PuzzleReader(new FileInputStream(fileName));
+		Puzzle puzzle;
+		int n = 0;
+		while ((puzzle = reader.next()) != null) {
+			runAll(fileName + " #" + (++n), puzzle);
+		}
+		reader.close();
+		for (int size : SIZES) {
+			runAll("comb", comb(size));
+		}
+		System.out.println();
+		List<Puzzle> corpus = new ArrayList<Puzzle>();
+		if (args.length > 1) {
+			reader = new PuzzleReader(new FileInputStream(args[1]));
+			while ((puzzle = reader.next()) != null) {
+				corpus.add(puzzle);
+			}
+			reader.close();
+		} else {
+			for (int i = 0; i < CORPUS_SIZE; i++) {
+				corpus.add(Generator.generate(CORPUS_SIDE, CORPUS_SIDE, CORPUS_SEED + i));
+			}
+		}
+		compareHeuristics(corpus);
+	}
+	// null stands for AI's own choice, the lowest loose end.
+	static void compareHeuristics(List<Puzzle> corpus) {
+		List<BranchHeuristic> heuristics = new ArrayList<BranchHeuristic>();
+		heuristics.add(null);
+		heuristics.addAll(Arrays.asList(Heuristics.values()));
+		System.out.printf("%-40s %14s %12s %10s%n", "Branching", "decisions", "ms", "timed out");
+		for (BranchHeuristic heuristic : heuristics) {
+			long decisions = 0, start = System.nanoTime();
+			int timedOut = 0;
+			for (Puzzle puzzle : corpus) {
+				AI ai = new AI(new Board(puzzle), Budget.millis(10000), new TranspositionTable(14));
+				ai.setHeuristic(heuristic);
+				SolverStats stats = ai.enableStats();
+				if (ai.attempt().status == SolveResult.Status.TIMED_OUT)
+					timedOut++;
+				decisions += stats.decisions;
+			}
+			System.out.printf("%-40s %14d %12.1f %10d%n", heuristic == null ? "lowest loose end" : heuristic,
+				decisions, (System.nanoTime() - start) / 1e6, timedOut);
+		}
+	}
+	static void runAll(String name, Puzzle puzzle) {
+		String board = name + " " + puzzle.r + "x" + puzzle.c;
+		Board solved = new Board(puzzle);
+		boolean ok = new AI(solved).solve();
+		final State state = solved.state;
+		if (ok) {
+			final int[] loop = markedEdges(state);
+			final State scratch = new State(puzzle);
+			measure("State.mark (+ rollback), per wall", board, loop.length, () -> {
+				for (int e : loop) {
+					scratch.mark(e);
+				}
+				scratch.rollback(0);
+				return scratch.markedCount();
+			});
+		}
+		// built out here so that only the lookups are timed
+		final Coord[] corners = new Coord[puzzle.vertexCount];
+		for (int v = 0; v < corners.length; v++) {
+			corners[v] = new Coord(v / (puzzle.c + 1), v % (puzzle.c + 1));
+		}
+		measure("State.getCornerCount, per corner", board, puzzle.vertexCount, () -> {
+			long sum = 0;
+			for (Coord corner : corners) {
+				sum += state.getCornerCount(corner);
+			}
+			return sum;
+		});
+		measure("new State(State)", board, 1, () -> new State(state).markedCount());
+		final BoardIntelligence boardIntelligence = new BoardIntelligence(solved);
+		measure("BoardIntelligence.solved", board, 1, () -> boardIntelligence.solved() ? 1 : 0);
+		measure("LessGuesswork.executeStaticIntuition", board, 1,
+			() -> new LessGuesswork(new Board(puzzle)).executeStaticIntuition() ? 1 : 0);
+	}
+	static void measure(String benchmark, String board, int opsPerCall, Op op) {
+		run(op, WARMUP_NANOS);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		long calls = run(op, MEASURE_NANOS);
+		long elapsed = System.nanoTime() - start;
+		long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+		double ops = (double) calls * opsPerCall;
+		System.out.printf("%-40s %-18s %14.1f %12.1f %10.1f%n",
+			benchmark, board, elapsed / ops, bytes / ops, bytes / (elapsed / 1e9) / (1 << 20));
+	}
+	// Calls op in growing batches until the time is up; returns how many calls ran.
+	static long run(Op op, long nanos) {
+		long calls = 0, batch = 1, sum = 0;
+		long end = System.nanoTime() + nanos;
+		while (System.nanoTime() < end) {
+			for (long i = 0; i < batch; i++) {
+				sum += op.run();
+			}
+			calls += batch;
+			if (batch < (1 << 20))
+				batch <<= 1;
+		}
+		sink += sum;
+		return calls;
+	}
+	static int[] markedEdges(State state) {
+		int[] edges = new int[state.markedCount()];
+		int n = 0;
+		for (int e = 0; e < state.puzzle.edgeCount; e++) {
+			if (state.isMarked(e))
+				edges[n++] = e;
+		}
+		return edges;
+	}
+	/*
+		A size x size board whose loop traces a comb: the whole top row plus
+		every even column. Every cell gets its clue, so it always solves.
+	*/
+	static Puzzle comb(int size) {
+		byte[] clues = new byte[size * size];
+		for (int r = 0; r < size; r++) {
+			for (int c = 0; c < size; c++) {
+				int count = 0;
+				boolean inside = inComb(r, c, size);
+				if (inside != inComb(r-1, c, size)) count++;
+				if (inside != inComb(r+1, c, size)) count++;
+				if (inside != inComb(r, c-1, size)) count++;
+				if (inside != inComb(r, c+1, size)) count++;
+				clues[r * size + c] = (byte) count;
+			}
+		}
+		return new Puzzle(size, size, clues);
+	}
+	static boolean inComb(int r, int c, int size) {
+		if (r < 0 || r >= size || c < 0 || c >= size)
+			return false;
+		return r == 0 || c % 2 == 0;
+	}
+}
@@ -1,5 +1,3 @@
-import java.util.*;
-
 class BoardIntelligence {
 	Board board;
 	BoardIntelligence(Board board) {
@@ -19,98 +17,20 @@ class BoardIntelligence {
 	public boolean solved() {
 		return rightNumberOfCorners() && metLineRequirements() && justOneLoop();
 	}
+	/*
+		State keeps its corner and clue counts current as walls come and
+		go, and it knows when the single loop has closed, so all three
+		checks are lookups.
+	*/
 	private boolean rightNumberOfCorners() {
-		int[][] corners = new int[Board.r+1][Board.c+1];
-		// The value at each cell corresponds to the number of times the top-left
-		// corner of that cell layed at the end of a 1-unit line segment.
-		for (int i = 0; i <= Board.r; i++) {
-			for (int j = 0; j < Board.c; j++) {
-				Wall w = Wall.makeWall(i, j, Side.TOP);
-				if (board.state.marked(w)) {
-					corners[i][j]++;
-					corners[i][j+1]++;
-				}
-			}
-		}
-		for (int i = 0; i < Board.r; i++) {
-			for (int j = 0; j <= Board.c; j++) {
-				Wall w = Wall.makeWall(i, j, Side.LEFT);
-				if (board.state.marked(w)) {
-					corners[i][j]++;
-					corners[i+1][j]++;
-				}
-			}
-		}
-		// Now let's count our corners.
-		for (int i = 0; i <= Board.r; i++) {
-			for (int j = 0; j <= Board.c; j++) {
-				if (corners[i][j] != 0 && corners[i][j] != 2)
-					return false;
-			}
-		}
-		return true;
+		// A third wall at a corner is never allowed, so only loose ends can be wrong.
+		return board.state.lineEndingCount() == 0;
 	}
 	private boolean metLineRequirements() {
-		// Now let's make sure we've met the line requirements.
-		for (int i = 0; i < Board.r; i++) {
-			for (int j = 0; j < Board.c; j++) {
-				if (!board.lineReqs[i][j].hasValue())
-					continue;
-				int target = board.lineReqs[i][j].getValue();
-				int count = 0;
-				for (Side side : Side.values()) {
-					Wall w = Wall.makeWall(i, j, side);
-					if (board.state.marked(w))
-						count++;
-				}
-				if (target != count)
-					return false;
-			}
-		}
-		return true;
+		return board.state.unmetClues() == 0;
 	}
 	private boolean justOneLoop() {
-		Wall start = null;
-		SEARCH:
-		for (int i = 0; i <= Board.r; i++) {
-			for (int j = 0; j <= Board.c; j++) {
-				for (Side s : Side.RELEVANT_SIDES) {
-					Wall w = Wall.makeWall(i, j, s);
-					if (board.state.marked(w)) {
-						start = w;
-						break SEARCH;
-					}
-				}
-			}
-		}
-		if (start == null) {
-			return false;
-		}
-		HashSet<Wall> hs = new HashSet<Wall>();
-		LinkedList<Wall> q = new LinkedList<Wall>();
-		q.offer(start);
-		hs.add(start);
-		while(!q.isEmpty()) {
-			Wall u = q.poll();
-			Iterator<Wall> it = board.state.getTouchingWalls(u).iterator();
-			while (it.hasNext()) {
-				Wall v = it.next();
-				if (!hs.contains(v)) {
-					hs.add(v);
-					q.add(v);
-				}
-			}
-		}
-		for (int i = 0; i <= Board.r; i++) {
-			for (int j = 0; j <= Board.c; j++) {
-				for (Side s : Side.RELEVANT_SIDES) {
-					Wall w = Wall.makeWall(i, j, s);
-					if (board.state.marked(w) && !hs.contains(w)) {
-						return false;
-					}
-				}
-			}
-		}
-		return true; // no line was found that wasn't touching the main loop
+		// State refuses to close a loop while other segments remain.
+		return board.state.loopClosed();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+/*
+	Told about every wall a State marks, eliminates or rolls back.
+*/
+interface EdgeListener {
+	void changed(int e);
+}
+/*
+	Scores undecided walls for the search to branch on; higher goes first.
+	A score may only depend on the corners at either end of the wall and
+	the cells on either side of it, since those are all BranchQueue
+	rescores when a wall changes.
+*/
+interface BranchHeuristic {
+	int buckets(); // scores run from 0 to buckets() - 1
+	int score(State state, int e);
+}
+enum Heuristics implements BranchHeuristic {
+	/*
+		Walls where something is nearly decided: a loose end with few
+		ways left to go counts most, then a clue with little slack left.
+	*/
+	MOST_CONSTRAINED {
+		public int buckets() {
+			return 14;
+		}
+		public int score(State state, int e) {
+			Puzzle puzzle = state.puzzle;
+			int ends = Math.max(end(state, puzzle.edgeEnd(e, 0)), end(state, puzzle.edgeEnd(e, 1)));
+			int cells = Math.max(slack(state, puzzle.edgeCell(e, 0)), slack(state, puzzle.edgeCell(e, 1)));
+			return 2 * ends + cells;
+		}
+	},
+	// Any wall that extends a loose end, otherwise any wall at all.
+	LOOSE_ENDS {
+		public int buckets() {
+			return 2;
+		}
+		public int score(State state, int e) {
+			Puzzle puzzle = state.puzzle;
+			return state.degree(puzzle.edgeEnd(e, 0)) == 1 || state.degree(puzzle.edgeEnd(e, 1)) == 1 ? 1 : 0;
+		}
+	},
+	// Walls around the biggest clues first.
+	BIGGEST_CLUE {
+		public int buckets() {
+			return 6;
+		}
+		public int score(State state, int e) {
+			Puzzle puzzle = state.puzzle;
+			int a = puzzle.edgeCell(e, 0), b = puzzle.edgeCell(e, 1);
+			return 1 + Math.max(a < 0 ? -1 : puzzle.clue(a), b < 0 ? -1 : puzzle.clue(b));
+		}
+	};
+
+	// 3 to 5 at a loose end, more the fewer ways it has left; 0 elsewhere.
+	static int end(State state, int v) {
+		if (state.degree(v) != 1)
+			return 0;
+		int open = 0;
+		for (int i = 0; i < 4; i++) {
+			int e = state.puzzle.vertexEdge(v, i);
+			if (e >= 0 && state.isUndecided(e))
+				open++;
+		}
+		return 6 - Math.max(open, 1);
+	}
+	// 1 to 3 for a clue, more the closer it is to being forced; 0 without one.
+	static int slack(State state, int cell) {
+		if (cell < 0 || state.puzzle.clue(cell) < 0)
+			return 0;
+		int open = 0;
+		for (int side = 0; side < 4; side++) {
+			if (state.isUndecided(state.puzzle.cellEdge(cell, side)))
+				open++;
+		}
+		int need = state.puzzle.clue(cell) - state.cellCount(cell);
+		if (open == 0 || need < 0 || need > open)
+			return 0;
+		return 3 - Math.min(Math.min(need, open - need), 2);
+	}
+}
+/*
+	Undecided walls sorted into buckets by a BranchHeuristic, each bucket
+	an intrusive doubly linked list, so that finding the best wall is
+	O(1) (amortized over a walk down past emptied buckets) instead of a
+	scan of the board. It listens to the State, rescoring the walls
+	around every wall that changes, which includes rollbacks, so it is
+	always up to date with wherever the search is.
+*/
+final class BranchQueue implements EdgeListener {
+	private final State state;
+	private final Puzzle puzzle;
+	private final BranchHeuristic heuristic;
+	private final int[] head, next, previous, bucket;
+	private int top = -1; // no bucket above this has anything in it
+	BranchQueue(State state, BranchHeuristic heuristic) {
+		this.state = state;
+		this.heuristic = heuristic;
+		puzzle = state.puzzle;
+		head = new int[heuristic.buckets()];
+		java.util.Arrays.fill(head, -1);
+		next = new int[puzzle.edgeCount];
+		previous = new int[puzzle.edgeCount];
+		bucket = new int[puzzle.edgeCount];
+		java.util.Arrays.fill(bucket, -1);
+		for (int e = 0; e < puzzle.edgeCount; e++) {
+			rescore(e);
+		}
+	}
+	// The highest scoring undecided wall, or -1 if there are none.
+	public int best() {
+		while (top >= 0 && head[top] < 0) {
+			top--;
+		}
+		return top < 0 ? -1 : head[top];
+	}
+	public void changed(int e) {
+		rescore(e);
+		for (int i = 0; i < 2; i++) {
+			int v = puzzle.edgeEnd(e, i);
+			for (int j = 0; j < 4; j++) {
+				int f = puzzle.vertexEdge(v, j);
+				if (f >= 0)
+					rescore(f);
+			}
+			int cell = puzzle.edgeCell(e, i);
+			if (cell >= 0) {
+				for (int side = 0; side < 4; side++) {
+					rescore(puzzle.cellEdge(cell, side));
+				}
+			}
+		}
+	}
+	private void rescore(int e) {
+		int b = state.isUndecided(e) ? heuristic.score(state, e) : -1;
+		if (b == bucket[e])
+			return;
+		if (bucket[e] >= 0) {
+			if (previous[e] >= 0)
+				next[previous[e]] = next[e];
+			else
+				head[bucket[e]] = next[e];
+			if (next[e] >= 0)
+				previous[next[e]] = previous[e];
+		}
+		bucket[e] = b;
+		if (b >= 0) {
+			next[e] = head[b];
+			previous[e] = -1;
+			if (head[b] >= 0)
+				previous[head[b]] = e;
+			head[b] = e;
+			if (b > top)
+				top = b;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+import java.util.concurrent.atomic.*;
+
+/*
+	How long a search may run: a deadline, a number of guesses, or until
+	someone calls cancel(), from any thread. Whichever comes first ends
+	it. The search asks after every guess, and only reads the clock
+	every 256 of them, so checking costs next to nothing.
+*/
+final class Budget {
+	private static final long NONE = Long.MAX_VALUE;
+	private final long deadline; // System.nanoTime()
+	private final long nodeLimit;
+	private final AtomicBoolean cancelled;
+	private Budget(long deadline, long nodeLimit, AtomicBoolean cancelled) {
+		this.deadline = deadline;
+		this.nodeLimit = nodeLimit;
+		this.cancelled = cancelled;
+	}
+	public static Budget unlimited() {
+		return new Budget(NONE, NONE, new AtomicBoolean());
+	}
+	public static Budget millis(long millis) {
+		return new Budget(System.nanoTime() + millis * 1000000, NONE, new AtomicBoolean());
+	}
+	public static Budget nodes(long nodes) {
+		return new Budget(NONE, nodes, new AtomicBoolean());
+	}
+	// Runs until flag is set; lets many searches be stopped at once.
+	public static Budget until(AtomicBoolean flag) {
+		return new Budget(NONE, NONE, flag);
+	}
+	public void cancel() {
+		cancelled.set(true);
+	}
+	public boolean cancelled() {
+		return cancelled.get();
+	}
+	// nodes is how many guesses the search has made so far.
+	boolean exhausted(long nodes) {
+		if (nodes >= nodeLimit || cancelled.get())
+			return true;
+		return deadline != NONE && (nodes & 255) == 0 && System.nanoTime() - deadline > 0;
+	}
+	// Whether the deadline has passed or someone cancelled, for work
+	// that isn't counted in guesses; this always reads the clock.
+	boolean overtime() {
+		return cancelled.get() || (deadline != NONE && System.nanoTime() - deadline > 0);
+	}
+}
+/*
+	What a budgeted search found. The State is the solution when there is
+	one. Otherwise it holds every wall propagation could prove before the
+	search started guessing, all of which any solution must agree with.
+*/
+final class SolveResult {
+	enum Status { SOLVED, UNSOLVABLE, TIMED_OUT }
+	final Status status;
+	final State state;
+	SolveResult(Status status, State state) {
+		this.status = status;
+		this.state = state;
+	}
+}
@@ -1,16 +1,223 @@
 import java.util.*;
-// This class represents the numerical requirement for the number of lines
-// to border a particular cell.
-class LineReq {
-	private int value;
-	public LineReq(int v) {
-		value = v;
+/*
+	The parts of a puzzle that never change once it has been read in: its
+	dimensions and its clues. A Puzzle can be shared by any number of
+	Boards and States, on any number of threads.
+*/
+final class Puzzle {
+	final int r, c;
+	// One clue per cell, row by row, with -1 where there isn't one.
+	private final byte[] clues;
+	/*
+		Everything on the board also has a plain int id. Top walls come
+		first, row by row, followed by left walls, row by row; corners and
+		cells are numbered row by row. The tables below say which corners
+		and cells each wall touches and which walls surround each corner
+		and cell, with -1 wherever the board ends.
+	*/
+	final int topCount, edgeCount, vertexCount, cellCount;
+	private final int[] edgeEnds, edgeCells, vertexEdges, cellEdges;
+	private final int[] borderEdges; // walls with the outside on one side
+	private volatile Patterns.Window[] windows; // built the first time someone asks
+	public Puzzle(int r, int c, byte[] clues) {
+		this.r = r;
+		this.c = c;
+		this.clues = clues.clone();
+		topCount = (r+1) * c;
+		edgeCount = topCount + r * (c+1);
+		vertexCount = (r+1) * (c+1);
+		cellCount = r * c;
+		edgeEnds = new int[2 * edgeCount];
+		edgeCells = new int[2 * edgeCount];
+		for (int i = 0; i <= r; i++) {
+			for (int j = 0; j <= c; j++) {
+				if (j < c) {
+					int e = topEdge(i, j);
+					edgeEnds[2*e] = vertex(i, j);
+					edgeEnds[2*e+1] = vertex(i, j+1);
+					edgeCells[2*e] = i > 0 ? cell(i-1, j) : -1;
+					edgeCells[2*e+1] = i < r ? cell(i, j) : -1;
+				}
+				if (i < r) {
+					int e = leftEdge(i, j);
+					edgeEnds[2*e] = vertex(i, j);
+					edgeEnds[2*e+1] = vertex(i+1, j);
+					edgeCells[2*e] = j > 0 ? cell(i, j-1) : -1;
+					edgeCells[2*e+1] = j < c ? cell(i, j) : -1;
+				}
+			}
+		}
+		vertexEdges = new int[4 * vertexCount];
+		for (int i = 0; i <= r; i++) {
+			for (int j = 0; j <= c; j++) {
+				int v = vertex(i, j);
+				// same order as Coord.intersects()
+				vertexEdges[4*v] = j < c ? topEdge(i, j) : -1;
+				vertexEdges[4*v+1] = i < r ? leftEdge(i, j) : -1;
+				vertexEdges[4*v+2] = j > 0 ? topEdge(i, j-1) : -1;
+				vertexEdges[4*v+3] = i > 0 ? leftEdge(i-1, j) : -1;
+			}
+		}
+		cellEdges = new int[4 * cellCount];
+		for (int i = 0; i < r; i++) {
+			for (int j = 0; j < c; j++) {
+				int cell = cell(i, j);
+				// same order as Side
+				cellEdges[4*cell] = topEdge(i, j);
+				cellEdges[4*cell+1] = leftEdge(i, j+1);
+				cellEdges[4*cell+2] = topEdge(i+1, j);
+				cellEdges[4*cell+3] = leftEdge(i, j);
+			}
+		}
+		borderEdges = new int[2 * (r + c)];
+		for (int j = 0, n = 0; j < c; j++) {
+			borderEdges[n++] = topEdge(0, j);
+			borderEdges[n++] = topEdge(r, j);
+		}
+		for (int i = 0, n = 2 * c; i < r; i++) {
+			borderEdges[n++] = leftEdge(i, 0);
+			borderEdges[n++] = leftEdge(i, c);
+		}
+	}
+	/*
+		This puzzle with the clue at cell changed. The copy shares every
+		table above with this one, and its pattern windows too, except the
+		few around that cell.
+	*/
+	public Puzzle withClue(int cell, int clue) {
+		return new Puzzle(this, cell, clue);
+	}
+	private Puzzle(Puzzle p, int cell, int clue) {
+		r = p.r;
+		c = p.c;
+		clues = p.clues.clone();
+		clues[cell] = (byte) clue;
+		topCount = p.topCount;
+		edgeCount = p.edgeCount;
+		vertexCount = p.vertexCount;
+		cellCount = p.cellCount;
+		edgeEnds = p.edgeEnds;
+		edgeCells = p.edgeCells;
+		vertexEdges = p.vertexEdges;
+		cellEdges = p.cellEdges;
+		borderEdges = p.borderEdges;
+		if (p.windows != null)
+			windows = Patterns.windows(this, p.windows, cell);
+	}
+	// Two puzzles are equal when they have the same shape and clues.
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Puzzle))
+			return false;
+		Puzzle p = (Puzzle) o;
+		return r == p.r && c == p.c && Arrays.equals(clues, p.clues);
+	}
+	@Override
+	public int hashCode() {
+		return 31 * (31 * r + c) + Arrays.hashCode(clues);
+	}
+	// The Slither.in format: "rows cols", then one line of clues per row.
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(r + " " + c + "\n");
+		for (int i = 0; i < r; i++) {
+			for (int j = 0; j < c; j++) {
+				if (j > 0)
+					sb.append(" ");
+				sb.append(clues[i * c + j]);
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+	public int clue(int cell) {
+		return clues[cell];
+	}
+	public int clue(int row, int col) {
+		return clues[row * c + col];
+	}
+	private int topEdge(int row, int col) {
+		return row * c + col;
+	}
+	private int leftEdge(int row, int col) {
+		return topCount + row * (c+1) + col;
+	}
+	public int vertex(int row, int col) {
+		return row * (c+1) + col;
+	}
+	public int cell(int row, int col) {
+		return row * c + col;
+	}
+	public int edge(Wall w) {
+		return w.vertical ? leftEdge(w.r, w.c) : topEdge(w.r, w.c);
+	}
+	public Wall wall(int e) {
+		if (e < topCount)
+			return new Wall(e / c, e % c, false);
+		return new Wall((e - topCount) / (c+1), (e - topCount) % (c+1), true);
+	}
+	/*
+		The wall at (y, x) when corners sit at even coordinates and cells
+		at odd ones, so that cell (row, col) is at (2*row+1, 2*col+1).
+		Returns -1 off the board.
+	*/
+	public int edgeAt(int y, int x) {
+		if (y < 0 || x < 0 || y > 2 * r || x > 2 * c)
+			return -1;
+		if ((y & 1) == 0 && (x & 1) == 1)
+			return topEdge(y / 2, x / 2);
+		if ((y & 1) == 1 && (x & 1) == 0)
+			return leftEdge(y / 2, x / 2);
+		return -1;
+	}
+	// The pattern rules that apply around each cell, or null where none do.
+	public Patterns.Window[] windows() {
+		Patterns.Window[] w = windows;
+		if (w == null) {
+			w = Patterns.windows(this);
+			windows = w;
+		}
+		return w;
+	}
+	public int vertex(Coord coord) {
+		return vertex(coord.r, coord.c);
+	}
+	public int edgeEnd(int e, int i) {
+		return edgeEnds[2*e + i];
+	}
+	public int edgeCell(int e, int i) {
+		return edgeCells[2*e + i];
 	}
-	public boolean hasValue() {
-		return value != -1;
+	public int vertexEdge(int v, int i) {
+		return vertexEdges[4*v + i];
 	}
-	public int getValue() {
-		return value;
+	public int cellEdge(int cell, int side) {
+		return cellEdges[4*cell + side];
+	}
+	public int borderEdgeCount() {
+		return borderEdges.length;
+	}
+	public int borderEdge(int i) {
+		return borderEdges[i];
+	}
+	/*
+		Keys for Zobrist hashing a State: one per wall for being marked
+		and one for being eliminated. They're scrambled from the edge id
+		(SplitMix64's finalizer) rather than kept in a table, since they
+		never change and every puzzle would hold the same ones.
+	*/
+	public long markKey(int e) {
+		return zobrist(2L * e);
+	}
+	public long eliminateKey(int e) {
+		return zobrist(2L * e + 1);
+	}
+	private static long zobrist(long x) {
+		x = (x + 0x5117e4L) * 0x9E3779B97F4A7C15L;
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
 	}
 }
 class Wall implements Comparable<Wall> {
@@ -26,18 +233,21 @@ class Wall implements Comparable<Wall> {
 		c = other.c;
 		vertical = other.vertical;
 	}
-	public boolean isValid() {
-		int maxR = vertical ? Board.r - 1 : Board.r;
-		int maxC = vertical ? Board.c : Board.c - 1;
+	public boolean isValid(Puzzle puzzle) {
+		int maxR = vertical ? puzzle.r - 1 : puzzle.r;
+		int maxC = vertical ? puzzle.c : puzzle.c - 1;
 		return r >= 0 && r <= maxR && c >= 0 && c <= maxC;
 	}
 	@Override
 	public int hashCode() {
-		return r + (c * 31) + (vertical ? 0 : 955); //r <= 25, c <= 30
+		return 31 * (31 * r + c) + (vertical ? 1 : 0);
 	}
 	@Override
 	public boolean equals(Object o) {
-		return hashCode() == o.hashCode();
+		if (!(o instanceof Wall))
+			return false;
+		Wall w = (Wall) o;
+		return r == w.r && c == w.c && vertical == w.vertical;
 	}
 	public int compareTo(Wall w) {
 		if (r < w.r)
@@ -96,7 +306,13 @@ class Coord implements Comparable<Coord> {
 		return 0;
 	}
 	@Override
+	public int hashCode() {
+		return 31 * r + c;
+	}
+	@Override
 	public boolean equals(Object o) {
+		if (!(o instanceof Coord))
+			return false;
 		Coord coord = (Coord) o;
 		return r == coord.r && c == coord.c;
 	}
@@ -110,104 +326,457 @@ class Coord implements Comparable<Coord> {
 	}
 }
 class State {
-	private int[] leftWalls; // navigate rows by [], cols by bit
-	private int[] topWalls;
-	private int[] leftAvailableWalls;
-	private int[] topAvailableWalls;
-	private TreeSet<Coord> lineEndings;
-	public State() {
-		leftWalls = new int[Board.r];
-		topWalls = new int[Board.r+1];
-		leftAvailableWalls = new int[Board.r];
-		topAvailableWalls = new int[Board.r+1];
-		lineEndings = new TreeSet<Coord>();
+	final Puzzle puzzle;
+	/*
+		Two flat bitsets indexed by the Puzzle's edge ids: top walls row by
+		row, then left walls row by row.
+
+		Every array here is a SharedIntArray or SharedLongArray, so copying
+		a State costs the same on any board, and a copy only pays for the
+		parts of the board it goes on to change.
+	*/
+	private SharedLongArray walls;
+	private SharedLongArray availableWalls; // walls we've ruled out
+	private long hash; // Zobrist hash of walls and availableWalls
+	/*
+		The loose ends of the line: corners with exactly one marked wall,
+		a bit per corner, and how many there are. The search always
+		extends the lowest numbered end, the one nearest the top left,
+		which it finds from the bits a word at a time: taking the newest
+		end instead makes it wander and blows up on sparse boards.
+	*/
+	private SharedLongArray endings;
+	private int endingCount;
+	private SharedIntArray trail; // every successful mark/eliminate, newest last
+	private int trailSize;
+	private int markedCount;
+	/*
+		Running totals, kept up to date by every mark and rollback so that
+		nobody has to recount the board: marked walls around each cell,
+		marked walls meeting at each corner, and how many clues are still
+		not satisfied.
+	*/
+	private SharedIntArray cellCounts;
+	private SharedIntArray cornerCounts;
+	private int unmetClues;
+	private SharedIntArray partner;
+	private int segments;
+	private boolean loopClosed;
+	/*
+		Every cell is either inside the loop or outside it, and a wall is
+		marked exactly when the cells on its two sides differ. So each
+		decided wall says whether two cells (or a cell and the outside,
+		node cellCount) are on the same side or not, and we keep those
+		facts in a union-find: parity[x] is whether x is on the other side
+		from parent[x]. There's no path compression, so that rollback can
+		undo a union by detaching the root it attached; union by size
+		keeps the trees shallow anyway. members[] threads each set into a
+		circular list so that a union can look over the smaller side.
+
+		A wall that contradicts what the sets already say is refused. If
+		forcing is on, each union also notes the undecided walls it has
+		just decided, for LessGuesswork to pick up with popForced().
+	*/
+	private SharedIntArray parent, parity, size, members;
+	private SharedIntArray unions; // the roots attached, newest last
+	private int unionCount;
+	private int foundParity; // set by find()
+	boolean forcing;
+	private int[] forced = new int[16];
+	private int forcedCount;
+	SolverStats stats; // null unless someone is counting
+	EdgeListener listener; // told about every change; copies don't get one
+	public State(Puzzle puzzle) {
+		this.puzzle = puzzle;
+		walls = new SharedLongArray((puzzle.edgeCount + 63) >>> 6);
+		availableWalls = new SharedLongArray((puzzle.edgeCount + 63) >>> 6);
+		endings = new SharedLongArray((puzzle.vertexCount + 63) >>> 6);
+		trail = new SharedIntArray(16);
+		cellCounts = new SharedIntArray(puzzle.cellCount);
+		cornerCounts = new SharedIntArray(puzzle.vertexCount);
+		partner = new SharedIntArray(puzzle.vertexCount);
+		parent = new SharedIntArray(puzzle.cellCount + 1);
+		parity = new SharedIntArray(puzzle.cellCount + 1);
+		size = new SharedIntArray(puzzle.cellCount + 1);
+		members = new SharedIntArray(puzzle.cellCount + 1);
+		unions = new SharedIntArray(16);
+		for (int x = 0; x <= puzzle.cellCount; x++) {
+			parent.set(x, x);
+			size.set(x, 1);
+			members.set(x, x);
+		}
+		for (int cell = 0; cell < puzzle.cellCount; cell++) {
+			if (puzzle.clue(cell) > 0)
+				unmetClues++;
+		}
 	}
+	// O(1): the copy shares everything with s until one of them changes it.
 	public State(State s) {
-		leftWalls = s.leftWalls.clone();
-		topWalls = s.topWalls.clone();
-		leftAvailableWalls = s.leftAvailableWalls.clone();
-		topAvailableWalls = s.topAvailableWalls.clone();
-		lineEndings = new TreeSet<Coord>(s.lineEndings);
+		this(s, s.puzzle);
 	}
-	public boolean eliminated(Wall wall) {
-		return check(wall, true);
+	/*
+		A copy of s for a puzzle of the same shape that has every clue s's
+		puzzle has, and maybe more, so that whatever s has decided still
+		holds. Only the count of unmet clues needs redoing, at the cells
+		whose clue differs.
+	*/
+	public State(State s, Puzzle puzzle) {
+		this.puzzle = puzzle;
+		walls = s.walls.copy();
+		availableWalls = s.availableWalls.copy();
+		hash = s.hash;
+		endings = s.endings.copy();
+		endingCount = s.endingCount;
+		trail = s.trail.copy();
+		trailSize = s.trailSize;
+		markedCount = s.markedCount;
+		cellCounts = s.cellCounts.copy();
+		cornerCounts = s.cornerCounts.copy();
+		unmetClues = s.unmetClues;
+		if (puzzle != s.puzzle) {
+			for (int cell = 0; cell < puzzle.cellCount; cell++) {
+				int before = s.puzzle.clue(cell), after = puzzle.clue(cell);
+				if (before == after)
+					continue;
+				int count = cellCounts.get(cell);
+				if (before >= 0 && count != before)
+					unmetClues--;
+				if (after >= 0 && count != after)
+					unmetClues++;
+			}
+		}
+		partner = s.partner.copy();
+		segments = s.segments;
+		loopClosed = s.loopClosed;
+		parent = s.parent.copy();
+		parity = s.parity.copy();
+		size = s.size.copy();
+		members = s.members.copy();
+		unions = s.unions.copy();
+		unionCount = s.unionCount;
+		forcing = s.forcing;
+	}
+	/*
+		The search and LessGuesswork speak in edge, corner and cell ids
+		(see Puzzle) so that nothing on their paths allocates. The Wall and
+		Coord versions further down are for the board display and for
+		people typing in moves.
+	*/
+	public boolean isMarked(int e) {
+		return (walls.get(e >>> 6) & (1L << e)) != 0;
 	}
-	public void eliminate(Wall wall) {
-		if (wall.isValid())
-			note(wall, true);
+	public boolean isEliminated(int e) {
+		return (availableWalls.get(e >>> 6) & (1L << e)) != 0;
 	}
-	public boolean marked(Wall wall) {
-		return check(wall, false);
+	public boolean isUndecided(int e) {
+		return ((walls.get(e >>> 6) | availableWalls.get(e >>> 6)) & (1L << e)) == 0;
 	}
-	public boolean mark(Wall wall) {
-		if (!wall.isValid())
+	public boolean eliminate(int e) {
+		if (isMarked(e))
+			return false;
+		if (isEliminated(e))
+			return true;
+		int united = unite(e, 0);
+		if (united < 0)
+			return false;
+		availableWalls.or(e >>> 6, 1L << e);
+		hash ^= puzzle.eliminateKey(e);
+		record(e, true, united > 0);
+		if (listener != null)
+			listener.changed(e);
+		return true;
+	}
+	public boolean mark(int e) {
+		if (isEliminated(e))
+			return false;
+		if (isMarked(e))
+			return true;
+		int a = puzzle.edgeEnd(e, 0), b = puzzle.edgeEnd(e, 1);
+		// impossible to form a circle because we'd form a T or a +,
+		// or close off a loop that can never join up with the rest
+		if (cornerCounts.get(a) == 2 || cornerCounts.get(b) == 2 || !sameSides(e, 1) || !join(a, b)) {
+			if (stats != null)
+				stats.rejectedMarks++;
 			return false;
-		note(wall, false);
-		boolean success = updateLineEndings(wall);
-		if (!success) {
-			unnote(wall, false);
-			if (Slither.humanPlay) {
-				System.out.println("You'll never end with a single continuous loop with a move like that.");
-			}
 		}
-		return success;
+		int united = unite(e, 1);
+		walls.or(e >>> 6, 1L << e);
+		hash ^= puzzle.markKey(e);
+		count(e, 1);
+		updateLineEndings(a);
+		updateLineEndings(b);
+		record(e, false, united > 0);
+		if (listener != null)
+			listener.changed(e);
+		return true;
 	}
-	private void unnote(Wall wall, boolean theoretical) {
-		if (!wall.isValid())
-			return;
-		int[] walls = getAppropriateIntArray(wall.vertical, theoretical);
-		walls[wall.r] &= ~(1 << Board.c - wall.c);
+	public int degree(int v) {
+		return cornerCounts.get(v);
 	}
-	private void note(Wall wall, boolean theoretical) {
-		int[] walls = getAppropriateIntArray(wall.vertical, theoretical);
-		walls[wall.r] |= (1 << Board.c - wall.c);
+	public int cellCount(int cell) {
+		return cellCounts.get(cell);
 	}
-	private boolean check(Wall wall, boolean theoretical) {
-		if (!wall.isValid())
+	/*
+		Every open segment is known by its two ends: partner[] takes one
+		end of a segment to the other. A new wall either starts a segment,
+		extends one, joins two, or joins the ends of the same segment.
+		That last move closes a loop, which only makes sense when no other
+		segment is left to join in. Once a loop is closed, nothing else can
+		be added.
+
+		An end that stops being an end keeps its old partner entry, and
+		nothing overwrites it until the wall is rolled back, so split()
+		can undo each case from the corner counts alone.
+	*/
+	private boolean join(int u, int v) {
+		if (loopClosed)
 			return false;
-		int[] walls = getAppropriateIntArray(wall.vertical, theoretical);
-		return (walls[wall.r] & (1 << (Board.c - wall.c))) > 0; 
-	}
-	private int[] getAppropriateIntArray(boolean vertical, boolean theoretical) {
-		if (theoretical) {
-			if (vertical) {
-				return leftAvailableWalls;
+		boolean uEnd = cornerCounts.get(u) == 1, vEnd = cornerCounts.get(v) == 1;
+		if (!uEnd && !vEnd) {
+			partner.set(u, v);
+			partner.set(v, u);
+			segments++;
+		} else if (uEnd && vEnd) {
+			if (partner.get(u) == v) {
+				if (segments != 1)
+					return false;
+				loopClosed = true;
+				segments = 0;
 			} else {
-				return topAvailableWalls;
+				partner.set(partner.get(u), partner.get(v));
+				partner.set(partner.get(v), partner.get(u));
+				segments--;
 			}
 		} else {
-			if (vertical) {
-				return leftWalls;
+			int end = uEnd ? u : v, fresh = uEnd ? v : u;
+			partner.set(partner.get(end), fresh);
+			partner.set(fresh, partner.get(end));
+		}
+		return true;
+	}
+	private void split(int u, int v) { // called after the wall's counts are removed
+		boolean uEnd = cornerCounts.get(u) == 1, vEnd = cornerCounts.get(v) == 1;
+		if (!uEnd && !vEnd) {
+			segments--;
+		} else if (uEnd && vEnd) {
+			if (loopClosed) {
+				loopClosed = false;
+				segments = 1;
 			} else {
-				return topWalls;
+				partner.set(partner.get(u), u);
+				partner.set(partner.get(v), v);
+				segments++;
 			}
+		} else {
+			int end = uEnd ? u : v;
+			partner.set(partner.get(end), end);
 		}
 	}
-	private boolean updateLineEndings(Wall wall) { // returns true if the wall placement was possible
-		Coord[] ends = wall.getCoords();
-		int[] cornerCounts = { getCornerCount(ends[0]), getCornerCount(ends[1]) };
-		if (cornerCounts[0] > 2 || cornerCounts[1] > 2)
-			return false;
-		for (int i = 0; i < 2; i++) {
-			if (cornerCounts[i] == 2) {
-				lineEndings.remove(ends[i]);
-			} else if (cornerCounts[i] == 1) {
-				lineEndings.add(ends[i]);
+	public boolean loopClosed() {
+		return loopClosed;
+	}
+	private int node(int cell) {
+		return cell < 0 ? puzzle.cellCount : cell;
+	}
+	private int find(int x) {
+		int p = 0;
+		while (parent.get(x) != x) {
+			p ^= parity.get(x);
+			x = parent.get(x);
+		}
+		foundParity = p;
+		return x;
+	}
+	// Whether the cells either side of e could still differ (sides 1)
+	// or match (sides 0).
+	private boolean sameSides(int e, int sides) {
+		int a = find(node(puzzle.edgeCell(e, 0))), pa = foundParity;
+		int b = find(node(puzzle.edgeCell(e, 1))), pb = foundParity;
+		return a != b || (pa ^ pb) == sides;
+	}
+	// 1 if this joined two sets, 0 if they were already one, and -1 if
+	// they were already one that disagrees.
+	private int unite(int e, int sides) {
+		int a = find(node(puzzle.edgeCell(e, 0))), pa = foundParity;
+		int b = find(node(puzzle.edgeCell(e, 1))), pb = foundParity;
+		if (a == b)
+			return (pa ^ pb) == sides ? 0 : -1;
+		if (size.get(a) < size.get(b)) {
+			int t = a; a = b; b = t;
+		}
+		parent.set(b, a);
+		parity.set(b, pa ^ pb ^ sides);
+		size.add(a, size.get(b));
+		splice(a, b);
+		unions.grow(unionCount + 1);
+		unions.set(unionCount++, b);
+		if (forcing)
+			force(a, b);
+		return 1;
+	}
+	private void separate() {
+		int b = unions.get(--unionCount), a = parent.get(b);
+		splice(a, b);
+		size.add(a, -size.get(b));
+		parent.set(b, b);
+		parity.set(b, 0);
+	}
+	// Joins two circular lists into one, or splits them apart again.
+	private void splice(int a, int b) {
+		int t = members.get(a);
+		members.set(a, members.get(b));
+		members.set(b, t);
+	}
+	/*
+		b's set was just put under a. After the splice, the size(b) steps
+		after a walk exactly b's old members, and any undecided wall from
+		one of them into a's old set is now decided.
+	*/
+	private void force(int a, int b) {
+		int m = a;
+		for (int n = size.get(b); n > 0; n--) {
+			m = members.get(m);
+			if (m == puzzle.cellCount) {
+				for (int i = 0; i < puzzle.borderEdgeCount(); i++) {
+					forceWall(puzzle.borderEdge(i), a);
+				}
 			} else {
-				throw new RuntimeException("Impossible lineEndings state. Count is 0.");
+				for (int side = 0; side < 4; side++) {
+					forceWall(puzzle.cellEdge(m, side), a);
+				}
 			}
 		}
-		return true;
 	}
-	public int getCornerCount(Coord c) {
-		Wall[] intersectingWalls = c.intersects();
-		int count = 0;
-		for (Wall w : intersectingWalls) {
-			if (marked(w)) {
-				count++;
+	private void forceWall(int e, int root) {
+		if (!isUndecided(e))
+			return;
+		int x = find(node(puzzle.edgeCell(e, 0))), px = foundParity;
+		int y = find(node(puzzle.edgeCell(e, 1))), py = foundParity;
+		if (x != root || y != root)
+			return;
+		if (forcedCount == forced.length)
+			forced = Arrays.copyOf(forced, 2 * forcedCount);
+		forced[forcedCount++] = (e << 1) | (px ^ py);
+	}
+	public int forcedCount() {
+		return forcedCount;
+	}
+	// A wall some union decided, as (e << 1) | 1 to mark it or
+	// (e << 1) | 0 to eliminate it. It may have been decided since.
+	public int popForced() {
+		return forced[--forcedCount];
+	}
+	// Equal for any two States with the same marked and eliminated walls,
+	// however they got there.
+	public long hash() {
+		return hash;
+	}
+	/*
+		The trail lets a search undo its moves in reverse order instead of
+		copying the whole State at every branch. checkpoint() remembers how
+		far the trail reached, and rollback() unwinds everything after it.
+	*/
+	public int checkpoint() {
+		return trailSize;
+	}
+	public void rollback(int checkpoint) {
+		forcedCount = 0;
+		while (trailSize > checkpoint) {
+			int code = trail.get(--trailSize);
+			int e = code >>> 2;
+			if ((code & 2) != 0)
+				separate();
+			if ((code & 1) != 0) {
+				availableWalls.and(e >>> 6, ~(1L << e));
+				hash ^= puzzle.eliminateKey(e);
+			} else {
+				int a = puzzle.edgeEnd(e, 0), b = puzzle.edgeEnd(e, 1);
+				walls.and(e >>> 6, ~(1L << e));
+				hash ^= puzzle.markKey(e);
+				count(e, -1);
+				split(a, b);
+				updateLineEndings(a);
+				updateLineEndings(b);
 			}
+			if (listener != null)
+				listener.changed(e);
 		}
-		return count;
+	}
+	private void record(int e, boolean theoretical, boolean united) {
+		trail.grow(trailSize + 1);
+		trail.set(trailSize++, (e << 2) | (united ? 2 : 0) | (theoretical ? 1 : 0));
+	}
+	public int trailEdge(int i) {
+		return trail.get(i) >>> 2;
+	}
+	public int markedCount() {
+		return markedCount;
+	}
+	public int unmetClues() {
+		return unmetClues;
+	}
+	private void count(int e, int delta) {
+		markedCount += delta;
+		for (int i = 0; i < 2; i++) {
+			int cell = puzzle.edgeCell(e, i);
+			if (cell >= 0)
+				countCell(cell, delta);
+			cornerCounts.add(puzzle.edgeEnd(e, i), delta);
+		}
+	}
+	private void countCell(int cell, int delta) {
+		int before = cellCounts.get(cell);
+		cellCounts.add(cell, delta);
+		int target = puzzle.clue(cell);
+		if (target < 0)
+			return;
+		if (before == target)
+			unmetClues++;
+		else if (before + delta == target)
+			unmetClues--;
+	}
+	public int lineEndingCount() {
+		return endingCount;
+	}
+	// The lowest numbered loose end, or -1 when there are none.
+	public int firstLineEnding() {
+		if (endingCount == 0)
+			return -1;
+		for (int word = 0; ; word++) {
+			long bits = endings.get(word);
+			if (bits != 0)
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+		}
+	}
+	public boolean isLineEnding(int v) {
+		return (endings.get(v >>> 6) & (1L << v)) != 0;
+	}
+	private void updateLineEndings(int v) {
+		boolean ending = cornerCounts.get(v) == 1;
+		if (ending == isLineEnding(v))
+			return;
+		if (ending) {
+			endings.or(v >>> 6, 1L << v);
+			endingCount++;
+		} else {
+			endings.and(v >>> 6, ~(1L << v));
+			endingCount--;
+		}
+	}
+	public boolean eliminated(Wall wall) {
+		return wall.isValid(puzzle) && isEliminated(puzzle.edge(wall));
+	}
+	public boolean eliminate(Wall wall) {
+		return wall.isValid(puzzle) && eliminate(puzzle.edge(wall));
+	}
+	public boolean marked(Wall wall) {
+		return wall.isValid(puzzle) && isMarked(puzzle.edge(wall));
+	}
+	public boolean mark(Wall wall) {
+		return wall.isValid(puzzle) && mark(puzzle.edge(wall));
+	}
+	public int getCornerCount(Coord c) {
+		return cornerCounts.get(puzzle.vertex(c));
 	}
 	/*
 	private boolean updateLineEndings(Wall wall, boolean originalCall) {
@@ -256,74 +825,28 @@ class State {
 		return true;
 	}
 	*/
-	/*
-		_|_|_
-		 | |
-	*/
-	public List<Wall> getTouchingWalls(Wall base) {
-		List<Wall> touchingWalls = new ArrayList<Wall>();
-		Wall w;
-		if (base.vertical) { // LEFT
-			for (int r = base.r - 1; r <= base.r+1; r++) {
-				if (r == base.r) // don't add yourself
-					continue;
-				w = Wall.makeWall(r, base.c, Side.LEFT);
-				if (marked(w)) {
-					touchingWalls.add(w);
-				}
-			}
-			for (int r = base.r; r <= base.r + 1; r++) {
-				for (int c = base.c - 1; c <= base.c; c++) {
-					w = Wall.makeWall(r, c, Side.TOP);
-					if (marked(w)) {
-						touchingWalls.add(w);
-					}
-				}
-			}
-		} else { // TOP
-			for (int c = base.c - 1; c <= base.c + 1; c++) {
-				if (c == base.c) // don't add yourself
-					continue;
-				w = Wall.makeWall(base.r, c, Side.TOP);
-				if (marked(w)) {
-					touchingWalls.add(w);
-				}
-			}
-			for (int r = base.r - 1; r <= base.r; r++) {
-				for (int c = base.c; c <= base.c + 1; c++) {
-					w = Wall.makeWall(r, c, Side.LEFT);
-					if (marked(w)) {
-						touchingWalls.add(w);
-					}
-				}
-			}
-		}
-		return touchingWalls;
-	}
 }
 class Board {
-	static int r, c;
-	static LineReq[][] lineReqs;
+	final Puzzle puzzle;
 	State state;
-	public Board () {
-		state = new State();
+	public Board (Puzzle puzzle) {
+		this(puzzle, new State(puzzle));
 	}
-	public static void setDimensions(int row, int col) {
-		r = row;
-		c = col;
-		lineReqs = new LineReq[r][c];
+	public Board (Puzzle puzzle, State state) {
+		this.puzzle = puzzle;
+		this.state = state;
 	}
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("   ");
-		for (int j = 1; j <= c; j++) {
+		for (int j = 1; j <= puzzle.c; j++) {
 			sb.append(" " + (j % 10));
 		}
 		sb.append("\n\n");
 		sb.append("   ");
 		addWallsToString(sb, 0, Side.TOP);
-		for (int i = 0; i < r; i++) {
+		for (int i = 0; i < puzzle.r; i++) {
 			sb.append((i+1) + " ");
 			if (i+1 < 10)
 				sb.append(" ");
@@ -340,10 +863,10 @@ class Board {
 		} else {
 			sb.append(" ");
 		}
-		for (int j = 0; j < c; j++) {
+		for (int j = 0; j < puzzle.c; j++) {
 			// square marking
-			if (lineReqs[row][j].hasValue()) {
-				sb.append(lineReqs[row][j].getValue());
+			if (puzzle.clue(row, j) >= 0) {
+				sb.append(puzzle.clue(row, j));
 			} else {
 				sb.append(" ");
 			}
@@ -359,7 +882,7 @@ class Board {
 		return;
 	}
 	private void addWallsToString(StringBuilder sb, int row, Side side) {
-		for (int j = 0; j < c; j++) {
+		for (int j = 0; j < puzzle.c; j++) {
 			Wall w = Wall.makeWall(row, j, side);
 			sb.append("+");
 			if (state.marked(w)) {
@@ -0,0 +1,173 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+	Makes new puzzles with exactly one solution.
+
+	First we grow a random blob of cells, one neighbor at a time, never
+	letting it wrap around a hole or touch itself only at a corner. The
+	outline of such a blob is always a single loop, so giving every cell
+	the number of outline walls around it makes a puzzle that loop
+	solves. Other loops sometimes fit the same clues, and then no clue
+	can ever be taken away, so we grow another blob until only the one
+	loop fits. Then we visit the clues in random order and take each one
+	away unless doing so would let in a second solution.
+
+	That's a check per cell, so each one has to cost about as much as
+	the search it needs rather than the whole board. The clues go in
+	batches of about sqrt(cells): the board is propagated once with the
+	whole batch taken away, and each check in the batch starts from a
+	copy of that, redoing only the cells around the batch's clues that
+	are still there. The candidate puzzles share their tables with the
+	current one (see Puzzle.withClue()), and every check reuses the same
+	dead end table.
+
+		java Generator <count> <rows> <cols> [seed] [threads]
+
+	writes the puzzles to stdout in the Slither.in format. Puzzle i only
+	depends on the seed and on i, so the same arguments always produce
+	the same file no matter how many threads run.
+*/
+class Generator {
+	private static final int[] DR = {-1, -1, 0, 1, 1, 1, 0, -1}; // clockwise from N
+	private static final int[] DC = {0, 1, 1, 1, 0, -1, -1, -1};
+	// A clue stays whenever we can't prove it's unneeded within this many
+	// guesses. That costs us a few extra clues, never a second solution,
+	// and allowing more guesses hardly ever saves one.
+	private static final long NODE_LIMIT = 500;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java Generator <count> <rows> <cols> [seed] [threads]");
+			return;
+		}
+		int count = Integer.parseInt(args[0]);
+		final int rows = Integer.parseInt(args[1]);
+		final int cols = Integer.parseInt(args[2]);
+		final long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Puzzle>> puzzles = new ArrayList<Future<Puzzle>>();
+		for (int i = 0; i < count; i++) {
+			final long puzzleSeed = seed + i * 0x9E3779B97F4A7C15L;
+			puzzles.add(pool.submit(() -> generate(rows, cols, puzzleSeed)));
+		}
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+		try {
+			for (Future<Puzzle> puzzle : puzzles) {
+				out.println(puzzle.get());
+			}
+		} finally {
+			pool.shutdownNow();
+			out.flush();
+		}
+	}
+	public static Puzzle generate(int rows, int cols, long seed) {
+		Random random = new Random(seed);
+		TranspositionTable deadEnds = new TranspositionTable(14);
+		int[][] clues = new int[rows][cols];
+		Puzzle puzzle;
+		do {
+			boolean[][] inside = growBlob(rows, cols, random);
+			for (int r = 0; r < rows; r++) {
+				for (int c = 0; c < cols; c++) {
+					clues[r][c] = outlineWalls(inside, r, c);
+				}
+			}
+			puzzle = toPuzzle(clues);
+		} while (!unique(puzzle, deadEnds));
+		List<Integer> order = new ArrayList<Integer>();
+		for (int cell = 0; cell < rows * cols; cell++) {
+			order.add(cell);
+		}
+		Collections.shuffle(order, random);
+		int batch = (int) Math.ceil(Math.sqrt(rows * cols));
+		for (int start = 0; start < order.size(); start += batch) {
+			List<Integer> cells = order.subList(start, Math.min(start + batch, order.size()));
+			Puzzle without = puzzle;
+			for (int cell : cells) {
+				without = without.withClue(cell, -1);
+			}
+			// The loop fits these clues too, so this can't fail.
+			Board base = new Board(without);
+			new LessGuesswork(base).executeStaticIntuition();
+			for (int cell : cells) {
+				Puzzle fewer = puzzle.withClue(cell, -1);
+				if (unique(new Board(fewer, new State(base.state, fewer)), without, deadEnds))
+					puzzle = fewer;
+			}
+		}
+		return puzzle;
+	}
+	// False unless we could prove there's exactly one solution.
+	private static boolean unique(Puzzle puzzle, TranspositionTable deadEnds) {
+		deadEnds.clear();
+		AI ai = new AI(new Board(puzzle), Budget.nodes(NODE_LIMIT), deadEnds);
+		return ai.countSolutions(2) == 1 && !ai.outOfBudget();
+	}
+	// The same, for a board already propagated for the clues of propagated.
+	private static boolean unique(Board board, Puzzle propagated, TranspositionTable deadEnds) {
+		deadEnds.clear();
+		AI ai = new AI(board, Budget.nodes(NODE_LIMIT), deadEnds);
+		return ai.lessGuesswork.propagateNewClues(propagated) && ai.count(2) == 1 && !ai.outOfBudget();
+	}
+	private static boolean[][] growBlob(int rows, int cols, Random random) {
+		boolean[][] inside = new boolean[rows][cols];
+		List<Integer> blob = new ArrayList<Integer>();
+		int start = random.nextInt(rows * cols);
+		inside[start / cols][start % cols] = true;
+		blob.add(start);
+		int target = Math.max(1, (int) (rows * cols * (0.35 + 0.3 * random.nextDouble())));
+		for (int tries = 0; blob.size() < target && tries < 50 * rows * cols; tries++) {
+			int cell = blob.get(random.nextInt(blob.size()));
+			int dir = 2 * random.nextInt(4);
+			int r = cell / cols + DR[dir], c = cell % cols + DC[dir];
+			if (r < 0 || r >= rows || c < 0 || c >= cols || inside[r][c] || !canAdd(inside, r, c))
+				continue;
+			inside[r][c] = true;
+			blob.add(r * cols + c);
+		}
+		return inside;
+	}
+	/*
+		Adding a cell keeps the outline a single loop as long as the blob
+		cells around it form one unbroken run, and that run includes at
+		least one edge neighbor. Two runs would close off a hole; a lone
+		corner neighbor would pinch the loop at a point.
+	*/
+	private static boolean canAdd(boolean[][] inside, int r, int c) {
+		int changes = 0;
+		boolean edgeNeighbor = false;
+		for (int i = 0; i < 8; i++) {
+			boolean here = isInside(inside, r + DR[i], c + DC[i]);
+			boolean next = isInside(inside, r + DR[(i+1) % 8], c + DC[(i+1) % 8]);
+			if (here != next)
+				changes++;
+			if (here && i % 2 == 0)
+				edgeNeighbor = true;
+		}
+		return changes == 2 && edgeNeighbor;
+	}
+	private static boolean isInside(boolean[][] inside, int r, int c) {
+		return r >= 0 && r < inside.length && c >= 0 && c < inside[0].length && inside[r][c];
+	}
+	private static int outlineWalls(boolean[][] inside, int r, int c) {
+		int count = 0;
+		for (int dir = 0; dir < 8; dir += 2) {
+			if (inside[r][c] != isInside(inside, r + DR[dir], c + DC[dir]))
+				count++;
+		}
+		return count;
+	}
+	private static Puzzle toPuzzle(int[][] clues) {
+		int cols = clues[0].length;
+		byte[] flat = new byte[clues.length * cols];
+		for (int r = 0; r < clues.length; r++) {
+			for (int c = 0; c < cols; c++) {
+				flat[r * cols + c] = (byte) clues[r][c];
+			}
+		}
+		return new Puzzle(clues.length, cols, flat);
+	}
+}
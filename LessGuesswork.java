@@ -1,90 +1,228 @@
 class LessGuesswork {
 	Board board;
+	Puzzle puzzle;
+	private boolean consistent;
+	SolverStats stats;
+	/*
+		One propagation on a big board can take far longer than a guess,
+		so we check the budget ourselves every WORK_CHECK walls. Running
+		out stops us as if we'd found a contradiction, and outOfBudget()
+		tells the two apart.
+	*/
+	static final int WORK_CHECK = 1024;
+	Budget budget; // null for none
+	private boolean outOfBudget;
+	private long work;
+	private SolverStats.Rule rule; // credited with the deductions being made
+	private int pattern = -1; // and which one, for Patterns
 	LessGuesswork(Board b) {
 		board = b;
+		puzzle = b.puzzle;
+		b.state.forcing = true;
 	}
-	public void executeStaticIntuition() {
-		zeroesAndFours();
-		boardCorners();
+	// Returns false if the clues already contradict each other.
+	public boolean executeStaticIntuition() {
+		consistent = !outOfBudget;
+		for (int cell = 0; consistent && cell < puzzle.cellCount; cell++) {
+			applyPatterns(cell, true);
+			overtime();
+		}
+		return consistent && propagate(0);
 	}
-	private void zeroesAndFours() {
-		for (int r = 0; r < Board.r; r++) {
-			for (int c = 0; c < Board.c; c++) {
-				switch (Board.lineReqs[r][c].getValue()) {
-				case 0:
-					for (Side s : Side.values()) {
-						Wall w = Wall.makeWall(r, c, s);
-						board.state.eliminate(w);
-					}
-					break;
-				case 4:
-					for (Side s : Side.values()) {
-						Wall w = Wall.makeWall(r, c, s);
-						board.state.mark(w);
-					}
-					break;
-				default:
-					break;
+	/*
+		Catches the board up after its State was propagated for a puzzle
+		with fewer clues (see State(State, Puzzle)): only the cells whose
+		clue is new, and the patterns that can see them, have anything
+		left to add before the usual propagation takes over.
+	*/
+	public boolean propagateNewClues(Puzzle before) {
+		State state = board.state;
+		int checkpoint = state.checkpoint();
+		consistent = !outOfBudget;
+		for (int cell = 0; consistent && cell < puzzle.cellCount; cell++) {
+			if (puzzle.clue(cell) == before.clue(cell))
+				continue;
+			checkCell(cell);
+			int row = cell / puzzle.c, col = cell % puzzle.c;
+			for (int i = Math.max(row - 1, 0); i <= Math.min(row + 1, puzzle.r - 1); i++) {
+				for (int j = Math.max(col - 1, 0); j <= Math.min(col + 1, puzzle.c - 1); j++) {
+					applyPatterns(puzzle.cell(i, j), true);
 				}
 			}
 		}
+		return consistent && propagate(checkpoint);
+	}
+	/*
+		The State's trail doubles as our worklist: every wall marked or
+		eliminated since position `from` is an entry, and each deduction we
+		make appends another one. A changed wall can only affect the two
+		cells and the two corners it touches, and the patterns around the
+		cells that share those corners, so those are all we recheck. Walls
+		that State's inside/outside coloring has decided go first.
+		We stop when the trail stops growing, or return false as soon as
+		something is impossible.
+	*/
+	public boolean propagate(int from) {
+		State state = board.state;
+		consistent = !outOfBudget;
+		for (int i = from; consistent; i++) {
+			if (overtime())
+				break;
+			rule = SolverStats.Rule.COLORING;
+			while (consistent && state.forcedCount() > 0) {
+				int code = state.popForced();
+				if (!state.isUndecided(code >>> 1))
+					continue;
+				if ((code & 1) != 0)
+					mark(code >>> 1);
+				else
+					eliminate(code >>> 1);
+			}
+			if (!consistent || i >= state.checkpoint())
+				break;
+			int e = state.trailEdge(i);
+			checkCell(puzzle.edgeCell(e, 0));
+			checkCell(puzzle.edgeCell(e, 1));
+			checkCorner(puzzle.edgeEnd(e, 0));
+			checkCorner(puzzle.edgeEnd(e, 1));
+			checkPatterns(puzzle.edgeEnd(e, 0));
+			checkPatterns(puzzle.edgeEnd(e, 1));
+		}
+		return consistent;
 	}
-	private void boardCorners() {
-		int[] rs = {0, Board.c - 1, Board.c - 1, 0};
-		int[] cs = {0, 0, Board.r - 1, Board.r - 1};
+	public boolean outOfBudget() {
+		return outOfBudget;
+	}
+	private boolean overtime() {
+		if (budget != null && (++work % WORK_CHECK) == 0 && budget.overtime()) {
+			outOfBudget = true;
+			consistent = false;
+		}
+		return outOfBudget;
+	}
+	private void checkCell(int cell) {
+		if (!consistent || cell < 0)
+			return;
+		int target = puzzle.clue(cell);
+		if (target < 0)
+			return;
+		int marked = board.state.cellCount(cell), open = 0;
+		for (int side = 0; side < 4; side++) {
+			if (board.state.isUndecided(puzzle.cellEdge(cell, side)))
+				open++;
+		}
+		rule = SolverStats.Rule.CELL_CLUE;
+		if (marked > target || marked + open < target) {
+			contradiction();
+		} else if (open > 0 && (marked == target || marked + open == target)) {
+			for (int side = 0; side < 4; side++) {
+				int e = puzzle.cellEdge(cell, side);
+				if (!board.state.isUndecided(e))
+					continue;
+				if (marked == target) {
+					eliminate(e);
+				} else {
+					mark(e);
+				}
+			}
+		}
+	}
+	// A corner is touched by either 0 or 2 walls of the finished loop.
+	private void checkCorner(int v) {
+		if (!consistent)
+			return;
+		int degree = board.state.degree(v);
+		int open = -1, openCount = 0;
 		for (int i = 0; i < 4; i++) {
-			Wall horiWall, vertWall;
-			switch (Board.lineReqs[rs[i]][cs[i]].getValue()) {
-				case 1:
-					if (rs[i] == 0) {
-						horiWall = Wall.makeWall(rs[i], cs[i], Side.TOP);
-					} else {
-						horiWall = Wall.makeWall(rs[i], cs[i], Side.BOTTOM);
-					}
-					if (cs[i] == 0) {
-						vertWall = Wall.makeWall(rs[i], cs[i], Side.LEFT);
-					} else {
-						vertWall = Wall.makeWall(rs[i], cs[i], Side.RIGHT);
-					}
-					board.state.eliminate(horiWall);
-					board.state.eliminate(vertWall);
-					break;
-				case 2:
-					if (rs[i] == 0) {
-						if (cs[i] == 0) {
-							board.state.mark(Wall.makeWall(0, 1, Side.TOP));
-							board.state.mark(Wall.makeWall(1, 0, Side.LEFT));
-						} else {
-							board.state.mark(Wall.makeWall(0, cs[i] - 1, Side.TOP));
-							board.state.mark(Wall.makeWall(1, cs[i], Side.RIGHT));
-						}
-					} else {
-						if (cs[i] == 0) {
-							board.state.mark(Wall.makeWall(rs[i] - 1, 0, Side.LEFT));
-							board.state.mark(Wall.makeWall(rs[i], 1, Side.BOTTOM));
-						} else {
-							board.state.mark(Wall.makeWall(rs[i] - 1, cs[i], Side.RIGHT));
-							board.state.mark(Wall.makeWall(rs[i], cs[i] - 1, Side.BOTTOM));
-						}
-					}
-					break;
-				case 3:
-					if (rs[i] == 0) {
-						horiWall = Wall.makeWall(rs[i], cs[i], Side.TOP);
-					} else {
-						horiWall = Wall.makeWall(rs[i], cs[i], Side.BOTTOM);
-					}
-					if (cs[i] == 0) {
-						vertWall = Wall.makeWall(rs[i], cs[i], Side.LEFT);
-					} else {
-						vertWall = Wall.makeWall(rs[i], cs[i], Side.RIGHT);
-					}
-					board.state.mark(horiWall);
-					board.state.mark(vertWall);
-					break;
-				default:
-					break;
+			int e = puzzle.vertexEdge(v, i);
+			if (e >= 0 && board.state.isUndecided(e)) {
+				open = e;
+				openCount++;
+			}
+		}
+		rule = SolverStats.Rule.CORNER;
+		if (degree == 2 || (degree == 0 && openCount == 1)) {
+			for (int i = 0; i < 4; i++) {
+				int e = puzzle.vertexEdge(v, i);
+				if (e >= 0 && board.state.isUndecided(e))
+					eliminate(e);
+			}
+		} else if (degree == 1) {
+			if (openCount == 0) {
+				contradiction();
+			} else if (openCount == 1) {
+				mark(open);
 			}
 		}
 	}
-}
\ No newline at end of file
+	// The cells around corner v.
+	private void checkPatterns(int v) {
+		int row = v / (puzzle.c + 1), col = v % (puzzle.c + 1);
+		for (int i = row - 1; i <= row; i++) {
+			for (int j = col - 1; j <= col; j++) {
+				if (i >= 0 && i < puzzle.r && j >= 0 && j < puzzle.c)
+					applyPatterns(puzzle.cell(i, j), false);
+			}
+		}
+	}
+	private void mark(int e) {
+		if (stats != null && board.state.isUndecided(e))
+			stats.deduced(rule, pattern);
+		if (!board.state.mark(e))
+			contradiction();
+	}
+	private void eliminate(int e) {
+		if (stats != null && board.state.isUndecided(e))
+			stats.deduced(rule, pattern);
+		if (!board.state.eliminate(e))
+			contradiction();
+	}
+	private void contradiction() {
+		if (consistent && stats != null)
+			stats.contradictions++;
+		consistent = false;
+	}
+	private void applyPatterns(int cell, boolean all) {
+		if (!consistent || cell < 0)
+			return;
+		Patterns.Window window = puzzle.windows()[cell];
+		if (window == null)
+			return;
+		int row = cell / puzzle.c, col = cell % puzzle.c;
+		rule = SolverStats.Rule.PATTERN;
+		if (all) {
+			for (Patterns.Rule r : window.always) {
+				apply(r, row, col);
+			}
+		}
+		for (Patterns.Rule r : window.conditional) {
+			if (holds(r.marked, true, row, col) && holds(r.eliminated, false, row, col))
+				apply(r, row, col);
+		}
+	}
+	// Walls off the edge of the board count as eliminated.
+	private boolean holds(int walls, boolean marked, int row, int col) {
+		for (; walls != 0; walls &= walls - 1) {
+			int e = Patterns.edge(puzzle, row, col, Integer.numberOfTrailingZeros(walls));
+			if (marked ? e < 0 || !board.state.isMarked(e) : e >= 0 && !board.state.isEliminated(e))
+				return false;
+		}
+		return true;
+	}
+	private void apply(Patterns.Rule r, int row, int col) {
+		pattern = r.pattern;
+		for (int walls = r.marks; consistent && walls != 0; walls &= walls - 1) {
+			int e = Patterns.edge(puzzle, row, col, Integer.numberOfTrailingZeros(walls));
+			if (e < 0)
+				contradiction();
+			else
+				mark(e);
+		}
+		for (int walls = r.eliminations; consistent && walls != 0; walls &= walls - 1) {
+			int e = Patterns.edge(puzzle, row, col, Integer.numberOfTrailingZeros(walls));
+			if (e >= 0)
+				eliminate(e);
+		}
+		pattern = -1;
+	}
+}
@@ -0,0 +1,107 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/*
+	The top of the search tree, down to splitDepth, split into ForkJoin
+	tasks so one hard puzzle can keep every core busy. Each task owns its
+	own copy of the State, so tasks never share anything but the Puzzle
+	and the flag that tells everyone to stop. At splitDepth a task hands
+	its copy to the ordinary sequential search, and idle workers steal
+	whatever branches are still queued. ParallelAI and SolutionCounter
+	say what happens at the bottom.
+*/
+abstract class SplitSearch {
+	final Board board;
+	final Puzzle puzzle;
+	final int splitDepth;
+	final AtomicBoolean stop = new AtomicBoolean();
+	// Dead ends are a property of the board alone, so each worker thread
+	// keeps one table for every subtree it searches.
+	private final ThreadLocal<TranspositionTable> deadEnds =
+		ThreadLocal.withInitial(() -> new TranspositionTable(14));
+	SplitSearch(Board board, int parallelism) {
+		this.board = board;
+		puzzle = board.puzzle;
+		// Enough tasks for each worker to have a few to steal.
+		splitDepth = 2 * (32 - Integer.numberOfLeadingZeros(Math.max(parallelism, 1))) + 2;
+	}
+	// Runs the sequential search from state, which is at splitDepth.
+	abstract void searchBelow(AI ai, State state);
+	// state has no wall left to guess, and solved says whether it's a loop.
+	abstract void leaf(State state, boolean solved);
+	// A propagated copy of state with wall marked or eliminated, or null
+	// if that leads straight to a contradiction.
+	static State guess(Puzzle puzzle, State state, int wall, boolean mark) {
+		State child = new State(state);
+		int checkpoint = child.checkpoint();
+		boolean ok = mark ? child.mark(wall) : child.eliminate(wall);
+		if (!ok || !new LessGuesswork(new Board(puzzle, child)).propagate(checkpoint))
+			return null;
+		return child;
+	}
+	@SuppressWarnings("serial") // tasks are never serialized
+	final class Branch extends RecursiveAction {
+		private final State state;
+		private final int depth;
+		Branch(State state, int depth) {
+			this.state = state;
+			this.depth = depth;
+		}
+		@Override
+		protected void compute() {
+			if (stop.get())
+				return;
+			AI ai = new AI(new Board(puzzle, state), Budget.until(stop), deadEnds.get());
+			if (depth >= splitDepth) {
+				searchBelow(ai, state);
+				return;
+			}
+			int wall = state.loopClosed() ? -1 : ai.nextWall();
+			if (wall < 0) {
+				leaf(state, ai.boardIntelligence.solved());
+				return;
+			}
+			State markedState = guess(puzzle, state, wall, true);
+			State eliminatedState = guess(puzzle, state, wall, false);
+			Branch marked = markedState == null ? null : new Branch(markedState, depth + 1);
+			Branch eliminated = eliminatedState == null ? null : new Branch(eliminatedState, depth + 1);
+			if (marked != null && eliminated != null) {
+				invokeAll(marked, eliminated);
+			} else if (marked != null) {
+				marked.compute();
+			} else if (eliminated != null) {
+				eliminated.compute();
+			}
+		}
+	}
+}
+// Solves one puzzle on a ForkJoinPool; the first task to find the loop
+// stops all the others.
+class ParallelAI extends SplitSearch {
+	private final AtomicReference<State> solution = new AtomicReference<State>();
+	ParallelAI(Board board, int parallelism) {
+		super(board, parallelism);
+	}
+	public boolean solve(ForkJoinPool pool) {
+		if (!new LessGuesswork(board).executeStaticIntuition())
+			return false;
+		pool.invoke(new Branch(new State(board.state), 0));
+		State state = solution.get();
+		if (state == null)
+			return false;
+		board.state = state;
+		return true;
+	}
+	void searchBelow(AI ai, State state) {
+		if (ai.search())
+			finish(state);
+	}
+	void leaf(State state, boolean solved) {
+		if (solved)
+			finish(state);
+	}
+	private void finish(State state) {
+		if (solution.compareAndSet(null, state))
+			stop.set(true);
+	}
+}
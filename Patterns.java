@@ -0,0 +1,374 @@
+import java.util.*;
+
+/*
+	Local deductions, drawn as pictures of a 3x3 block of cells around a
+	center cell and compiled into bitmasks once, in all 8 rotations and
+	reflections.
+
+	In a picture, '+' is a corner, digits are clues the cells must have,
+	'-' and '|' are walls that must already be marked, and 'x' walls that
+	must already be eliminated. 'M' and 'X' are what follows: walls to
+	mark and walls to eliminate. Walls off the edge of the board count as
+	eliminated, which is how the board corner rules come out of the
+	general ones.
+
+	Every window on the board is described by the clues in its 9 cells,
+	so the rules that can ever fire there are looked up once per puzzle
+	(see Puzzle.windows()). Rules that need walls are only kept to walls
+	touching the center cell's corners, so LessGuesswork only has to
+	recheck the cells around the corners of each wall that changes.
+*/
+class Patterns {
+	static final String[] NAMES = {
+		"zero", "four", "adjacent threes", "diagonal threes",
+		"dead corner one", "dead corner three", "three with a line in",
+		"one with a line in", "corner two",
+	};
+	private static final String[][] PICTURES = {
+		{
+			"+ + + +",
+			"       ",
+			"+ +X+ +",
+			"  X0X  ",
+			"+ +X+ +",
+			"       ",
+			"+ + + +",
+		}, {
+			"+ + + +",
+			"       ",
+			"+ +M+ +",
+			"  M4M  ",
+			"+ +M+ +",
+			"       ",
+			"+ + + +",
+		}, {
+			// the line through the shared wall can't go straight on
+			"+ + + +",
+			"    X  ",
+			"+ + + +",
+			"  M3M3M",
+			"+ + + +",
+			"    X  ",
+			"+ + + +",
+		}, {
+			"+ + + +",
+			"       ",
+			"+ +M+ +",
+			"  M3   ",
+			"+ + + +",
+			"     3M",
+			"+ + +M+",
+		}, {
+			// a line into the top left corner would have to use both walls
+			"+ + + +",
+			"  x    ",
+			"+x+X+ +",
+			"  X1   ",
+			"+ + + +",
+			"       ",
+			"+ + + +",
+		}, {
+			// and a 3 has to use at least one of them
+			"+ + + +",
+			"  x    ",
+			"+x+M+ +",
+			"  M3   ",
+			"+ + + +",
+			"       ",
+			"+ + + +",
+		}, {
+			// the line turns into the 3, using exactly one wall at the corner
+			"+ + + +",
+			"  |    ",
+			"+X+ + +",
+			"   3M  ",
+			"+ +M+ +",
+			"       ",
+			"+ + + +",
+		}, {
+			"+ + + +",
+			"  |    ",
+			"+x+ + +",
+			"   1X  ",
+			"+ +X+ +",
+			"       ",
+			"+ + + +",
+		}, {
+			// the 2 uses the top and left walls or neither, and either way
+			// the line leaves along the top and down the left
+			"+ + + +",
+			"  x x  ",
+			"+x+ +M+",
+			"   2   ",
+			"+x+ + +",
+			"  M    ",
+			"+ + + +",
+		},
+	};
+	/*
+		Positions in a picture are (y, x) from -3 to 3 with the center
+		cell at (0, 0): cells have both even, corners both odd, and walls
+		one of each. These number the 9 cells and 24 walls.
+	*/
+	static final int[] CELL_Y = new int[9], CELL_X = new int[9];
+	static final int[] EDGE_Y = new int[24], EDGE_X = new int[24];
+	private static final int[][] INDEX = new int[7][7];
+	private static final Rule[] RULES;
+	static {
+		int cells = 0, edges = 0;
+		for (int y = -3; y <= 3; y++) {
+			for (int x = -3; x <= 3; x++) {
+				boolean oddY = (y & 1) != 0, oddX = (x & 1) != 0;
+				if (!oddY && !oddX) {
+					CELL_Y[cells] = y;
+					CELL_X[cells] = x;
+					INDEX[y+3][x+3] = cells++;
+				} else if (oddY != oddX) {
+					EDGE_Y[edges] = y;
+					EDGE_X[edges] = x;
+					INDEX[y+3][x+3] = edges++;
+				}
+			}
+		}
+		Set<Rule> rules = new LinkedHashSet<Rule>();
+		for (int p = 0; p < PICTURES.length; p++) {
+			for (int symmetry = 0; symmetry < 8; symmetry++) {
+				rules.add(compile(p, symmetry));
+			}
+		}
+		RULES = rules.toArray(new Rule[0]);
+	}
+	static final class Rule {
+		final int pattern; // index into NAMES
+		final int clueMask, clues; // 3 bits per cell, as in key()
+		final int marked, eliminated; // walls that must already be so
+		final int marks, eliminations; // walls that follow
+		final int outline; // see outline(); 0 for most rules
+		Rule(int pattern, int clueMask, int clues, int marked, int eliminated, int marks, int eliminations) {
+			this.pattern = pattern;
+			this.clueMask = clueMask;
+			this.clues = clues;
+			this.marked = marked;
+			this.eliminated = eliminated;
+			this.marks = marks;
+			this.eliminations = eliminations;
+			outline = outline(clueMask, clues, marked, eliminated, marks, eliminations);
+		}
+		@Override
+		public int hashCode() {
+			return Objects.hash(clueMask, clues, marked, eliminated, marks, eliminations);
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Rule))
+				return false;
+			Rule rule = (Rule) o;
+			return clueMask == rule.clueMask && clues == rule.clues && marked == rule.marked
+				&& eliminated == rule.eliminated && marks == rule.marks && eliminations == rule.eliminations;
+		}
+	}
+	// The rules that can fire around one cell: some always, the others
+	// only once the walls they need are in place.
+	static final class Window {
+		final Rule[] always, conditional;
+		Window(Rule[] always, Rule[] conditional) {
+			this.always = always;
+			this.conditional = conditional;
+		}
+	}
+	/*
+		Symmetry bit 4 swaps y and x, bit 1 flips y and bit 2 flips x,
+		which between them make all 8 rotations and reflections.
+	*/
+	private static Rule compile(int p, int symmetry) {
+		int clueMask = 0, clues = 0, marked = 0, eliminated = 0, marks = 0, eliminations = 0;
+		String[] picture = PICTURES[p];
+		for (int i = 0; i < 7; i++) {
+			for (int j = 0; j < 7; j++) {
+				char ch = picture[i].charAt(j);
+				if (ch == ' ' || ch == '+')
+					continue;
+				int y = i - 3, x = j - 3;
+				if ((symmetry & 4) != 0) {
+					int t = y;
+					y = x;
+					x = t;
+				}
+				if ((symmetry & 1) != 0)
+					y = -y;
+				if ((symmetry & 2) != 0)
+					x = -x;
+				int bit = INDEX[y+3][x+3];
+				if (ch >= '0' && ch <= '4') {
+					clueMask |= 7 << (3 * bit);
+					clues |= (ch - '0' + 1) << (3 * bit);
+					continue;
+				}
+				if ((ch == '-' || ch == '|' || ch == 'x') && (Math.abs(y) > 2 || Math.abs(x) > 2))
+					throw new IllegalStateException(NAMES[p] + " needs a wall too far from the center cell");
+				switch (ch) {
+				case '-': case '|': marked |= 1 << bit; break;
+				case 'x': eliminated |= 1 << bit; break;
+				case 'M': marks |= 1 << bit; break;
+				case 'X': eliminations |= 1 << bit; break;
+				default: throw new IllegalStateException(NAMES[p] + " has a '" + ch + "' in it");
+				}
+			}
+		}
+		return new Rule(p, clueMask, clues, marked, eliminated, marks, eliminations);
+	}
+	/*
+		The one loop a local rule can't see past is the outline of its
+		own clued cells, with nothing else on the board. Two 3s side by
+		side are the example: their outline uses three walls of each but
+		not the wall between them. If that outline fits a rule's clues and
+		the walls it needs but not what it concludes, this returns it, and
+		windows() leaves the rule out of any puzzle the outline solves.
+	*/
+	private static int outline(int clueMask, int clues, int marked, int eliminated, int marks, int eliminations) {
+		int outline = 0;
+		for (int i = 0; i < 9; i++) {
+			if ((clueMask >>> (3 * i) & 7) != 0)
+				outline ^= cellWalls(i);
+		}
+		for (int i = 0; i < 9; i++) {
+			int clue = (clues >>> (3 * i) & 7) - 1;
+			if (clue >= 0 && Integer.bitCount(outline & cellWalls(i)) != clue)
+				return 0;
+		}
+		if ((marked & ~outline) != 0 || (eliminated & outline) != 0)
+			return 0;
+		if ((marks & ~outline) == 0 && (eliminations & outline) == 0)
+			return 0;
+		return outline;
+	}
+	private static int cellWalls(int i) {
+		int y = CELL_Y[i] + 3, x = CELL_X[i] + 3;
+		return 1 << INDEX[y-1][x] | 1 << INDEX[y+1][x] | 1 << INDEX[y][x-1] | 1 << INDEX[y][x+1];
+	}
+	/*
+		The rules around every cell, null where nothing ever fires. Cells
+		with the same clues around them share a Window, but only within
+		the one puzzle: there are far too many clue neighborhoods to keep
+		them all for as long as the program runs.
+	*/
+	static Window[] windows(Puzzle puzzle) {
+		Map<Integer, Window> byKey = new HashMap<Integer, Window>();
+		Window[] windows = new Window[puzzle.cellCount];
+		int positive = positiveClues(puzzle);
+		for (int row = 0; row < puzzle.r; row++) {
+			for (int col = 0; col < puzzle.c; col++) {
+				windows[puzzle.cell(row, col)] = window(puzzle, row, col, positive, byKey);
+			}
+		}
+		return windows;
+	}
+	/*
+		windows(puzzle), given the windows of a puzzle that only has a
+		different clue at cell. Just the 9 windows around that cell see
+		it, unless either puzzle has few enough clues for an outline to
+		solve it, and then any rule anywhere might come or go.
+	*/
+	static Window[] windows(Puzzle puzzle, Window[] near, int cell) {
+		int positive = positiveClues(puzzle);
+		if (positive <= OUTLINE_CELLS + 1)
+			return windows(puzzle);
+		Map<Integer, Window> byKey = new HashMap<Integer, Window>();
+		Window[] windows = near.clone();
+		int row = cell / puzzle.c, col = cell % puzzle.c;
+		for (int i = Math.max(row - 1, 0); i <= Math.min(row + 1, puzzle.r - 1); i++) {
+			for (int j = Math.max(col - 1, 0); j <= Math.min(col + 1, puzzle.c - 1); j++) {
+				windows[puzzle.cell(i, j)] = window(puzzle, i, j, positive, byKey);
+			}
+		}
+		return windows;
+	}
+	private static Window window(Puzzle puzzle, int row, int col, int positive, Map<Integer, Window> byKey) {
+		Window window = byKey.computeIfAbsent(key(puzzle, row, col), Patterns::rulesFor);
+		Rule[] always = withoutOutlines(window.always, puzzle, row, col, positive);
+		Rule[] conditional = withoutOutlines(window.conditional, puzzle, row, col, positive);
+		if (always != window.always || conditional != window.conditional)
+			window = new Window(always, conditional);
+		return window.always.length + window.conditional.length > 0 ? window : null;
+	}
+	private static int positiveClues(Puzzle puzzle) {
+		int positive = 0;
+		for (int cell = 0; cell < puzzle.cellCount; cell++) {
+			if (puzzle.clue(cell) > 0)
+				positive++;
+		}
+		return positive;
+	}
+	// rules less any whose outline, around (row, col), solves the puzzle
+	private static Rule[] withoutOutlines(Rule[] rules, Puzzle puzzle, int row, int col, int positive) {
+		List<Rule> kept = new ArrayList<Rule>();
+		for (Rule rule : rules) {
+			if (rule.outline == 0 || !outlineSolves(puzzle, rule.outline, row, col, positive))
+				kept.add(rule);
+		}
+		return kept.size() == rules.length ? rules : kept.toArray(new Rule[0]);
+	}
+	// No outline reaches past the 5x5 cells around its window's center.
+	private static final int OUTLINE_CELLS = 25;
+	/*
+		Whether every clue on the board counts the walls of the outline
+		around (row, col). positive is how many clues above 0 the puzzle
+		has, so that only the cells along the outline need looking at.
+	*/
+	private static boolean outlineSolves(Puzzle puzzle, int outline, int row, int col, int positive) {
+		int[] edges = new int[Integer.bitCount(outline)];
+		for (int i = 0, walls = outline; walls != 0; walls &= walls - 1) {
+			edges[i++] = edge(puzzle, row, col, Integer.numberOfTrailingZeros(walls));
+		}
+		Set<Integer> cells = new HashSet<Integer>();
+		for (int e : edges) {
+			if (e < 0)
+				return false;
+			for (int i = 0; i < 2; i++) {
+				if (puzzle.edgeCell(e, i) >= 0)
+					cells.add(puzzle.edgeCell(e, i));
+			}
+		}
+		int seen = 0;
+		for (int cell : cells) {
+			int clue = puzzle.clue(cell), count = 0;
+			for (int side = 0; side < 4; side++) {
+				for (int e : edges) {
+					if (e == puzzle.cellEdge(cell, side))
+						count++;
+				}
+			}
+			if (clue >= 0 && clue != count)
+				return false;
+			if (clue > 0)
+				seen++;
+		}
+		return seen == positive;
+	}
+	private static Window rulesFor(int key) {
+		List<Rule> always = new ArrayList<Rule>(), conditional = new ArrayList<Rule>();
+		for (Rule rule : RULES) {
+			if ((key & rule.clueMask) != rule.clues)
+				continue;
+			if ((rule.marked | rule.eliminated) == 0)
+				always.add(rule);
+			else
+				conditional.add(rule);
+		}
+		return new Window(always.toArray(new Rule[0]), conditional.toArray(new Rule[0]));
+	}
+	// 3 bits per cell in the window: 7 off the board, otherwise the clue + 1.
+	private static int key(Puzzle puzzle, int row, int col) {
+		int key = 0;
+		for (int i = 0; i < 9; i++) {
+			int r = row + CELL_Y[i] / 2, c = col + CELL_X[i] / 2;
+			int value = r < 0 || r >= puzzle.r || c < 0 || c >= puzzle.c ? 7 : puzzle.clue(r, c) + 1;
+			key |= value << (3 * i);
+		}
+		return key;
+	}
+	// The wall numbered bit in the window around (row, col), or -1 off the board.
+	static int edge(Puzzle puzzle, int row, int col, int bit) {
+		return puzzle.edgeAt(2 * row + 1 + EDGE_Y[bit], 2 * col + 1 + EDGE_X[bit]);
+	}
+}
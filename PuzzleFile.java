@@ -0,0 +1,167 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/*
+	A packed binary file of puzzles, for corpora too big to keep parsing
+	as text. The layout, all big-endian:
+
+		int    magic ("SLPZ")
+		int    version
+		int    number of puzzles
+		long   where the index starts
+		...    the puzzles, one after another
+		long[] the index: where each puzzle starts
+
+	and each puzzle is
+
+		int    rows
+		int    cols
+		byte[] the clues, row by row, 3 bits each, lowest bits first.
+		       Each clue is stored plus one, so 0 means no clue.
+
+	Opening a file maps the whole thing into memory, so any worker can
+	read any puzzle by its index without going through a stream. Nothing
+	in the buffer is ever written, so one PuzzleFile can be shared by
+	every thread.
+
+		java PuzzleFile <puzzles.txt|-> <puzzles.bin>
+
+	converts a file in the Slither.in format.
+*/
+class PuzzleFile implements Closeable {
+	static final int MAGIC = 0x534c505a;
+	static final int VERSION = 1;
+	private static final int HEADER = 20;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int index;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java PuzzleFile <puzzles.txt|-> <puzzles.bin>");
+			return;
+		}
+		InputStream in = args[0].equals("-") ? System.in : new FileInputStream(args[0]);
+		long start = System.nanoTime();
+		int count;
+		try (PuzzleReader reader = new PuzzleReader(in)) {
+			count = convert(reader, Paths.get(args[1]));
+		}
+		System.err.printf("Wrote %d puzzles in %.3f s%n", count, (System.nanoTime() - start) / 1e9);
+	}
+	// Writes every puzzle the reader has left, and returns how many there were.
+	static int convert(PuzzleReader reader, Path path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.setLength(0);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.getFD())));
+			out.write(new byte[HEADER]); // filled in at the end
+			long position = HEADER;
+			long[] offsets = new long[16];
+			int count = 0;
+			Puzzle puzzle;
+			while ((puzzle = reader.next()) != null) {
+				if (count == offsets.length)
+					offsets = java.util.Arrays.copyOf(offsets, 2 * count);
+				offsets[count++] = position;
+				byte[] packed = pack(puzzle);
+				out.writeInt(puzzle.r);
+				out.writeInt(puzzle.c);
+				out.write(packed);
+				position += 8 + packed.length;
+			}
+			for (int i = 0; i < count; i++) {
+				out.writeLong(offsets[i]);
+			}
+			out.flush();
+			file.seek(0);
+			file.writeInt(MAGIC);
+			file.writeInt(VERSION);
+			file.writeInt(count);
+			file.writeLong(position);
+			return count;
+		}
+	}
+	private static byte[] pack(Puzzle puzzle) {
+		byte[] packed = new byte[packedLength(puzzle.cellCount)];
+		for (int cell = 0; cell < puzzle.cellCount; cell++) {
+			int bit = 3 * cell;
+			int value = puzzle.clue(cell) + 1;
+			packed[bit >> 3] |= value << (bit & 7);
+			if ((bit & 7) > 5)
+				packed[(bit >> 3) + 1] |= value >> (8 - (bit & 7));
+		}
+		return packed;
+	}
+	private static int packedLength(int cells) {
+		return (3 * cells + 7) / 8;
+	}
+	// Whether the file starts the way one of ours does.
+	static boolean isPuzzleFile(String fileName) {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	PuzzleFile(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		if (channel.size() > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IOException(path + " is too big to map in one piece");
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) {
+			channel.close();
+			throw new IOException(path + " is not a puzzle file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			channel.close();
+			throw new IOException(path + " is version " + buffer.getInt(4) + ", expected " + VERSION);
+		}
+		count = buffer.getInt(8);
+		index = (int) buffer.getLong(12);
+	}
+	public int size() {
+		return count;
+	}
+	public int rows(int i) {
+		return buffer.getInt(offset(i));
+	}
+	public int cols(int i) {
+		return buffer.getInt(offset(i) + 4);
+	}
+	// The clue in the given cell of puzzle i, read straight out of the file.
+	public int clue(int i, int cell) {
+		return unpack(offset(i) + 8, cell) - 1;
+	}
+	public Puzzle get(int i) {
+		int offset = offset(i);
+		int r = buffer.getInt(offset);
+		int c = buffer.getInt(offset + 4);
+		byte[] clues = new byte[r * c];
+		for (int cell = 0; cell < clues.length; cell++) {
+			clues[cell] = (byte) (unpack(offset + 8, cell) - 1);
+		}
+		return new Puzzle(r, c, clues);
+	}
+	private int offset(int i) {
+		if (i < 0 || i >= count)
+			throw new IndexOutOfBoundsException("puzzle " + i + " of " + count);
+		return (int) buffer.getLong(index + 8 * i);
+	}
+	private int unpack(int start, int cell) {
+		int bit = 3 * cell;
+		int at = start + (bit >> 3);
+		int bits = buffer.get(at) & 0xff;
+		if ((bit & 7) > 5)
+			bits |= (buffer.get(at + 1) & 0xff) << 8;
+		return (bits >> (bit & 7)) & 7;
+	}
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,143 @@
+import java.io.*;
+
+/*
+	Reads puzzles one at a time from a stream in the Slither.in format:
+	a "rows cols" line followed by one line of clues per row. Any number
+	of blank lines may separate one puzzle from the next.
+
+	We work on the raw bytes through a fixed buffer, so reading a file of
+	any size takes the same memory, and the only thing allocated per
+	puzzle is its clue array. Anything that doesn't fit the format is
+	reported as an IOException naming the line it's on.
+
+	Given a limit on the number of cells, a bigger board is refused with
+	a TooBigException as soon as its first line is read, before we
+	allocate anything for it.
+*/
+class PuzzleReader implements Closeable {
+	private static final int EOF = -1;
+	private final InputStream in;
+	private final long maxCells;
+	private final byte[] buffer = new byte[1 << 16];
+	private int position, limit;
+	private int line = 1;
+	static class TooBigException extends IOException {
+		private static final long serialVersionUID = 1L;
+		TooBigException(String message) {
+			super(message);
+		}
+	}
+	PuzzleReader(InputStream in) {
+		this(in, Integer.MAX_VALUE);
+	}
+	PuzzleReader(InputStream in, long maxCells) {
+		this.in = in;
+		this.maxCells = maxCells;
+	}
+	// Returns null once the stream runs out of puzzles.
+	public Puzzle next() throws IOException {
+		if (!skipBlankLines())
+			return null;
+		int r = readInt("the number of rows");
+		int c = readInt("the number of columns");
+		if (r <= 0 || c <= 0 || (long) r * c > Integer.MAX_VALUE)
+			throw error("a " + r + "x" + c + " board is impossible");
+		if ((long) r * c > maxCells)
+			throw new TooBigException("line " + line + ": a " + r + "x" + c + " board has more than " + maxCells + " cells");
+		endLine();
+		byte[] clues = new byte[r * c];
+		for (int i = 0; i < r; i++) {
+			if (peek() == EOF)
+				throw error("expected " + r + " rows of clues, found " + i);
+			for (int j = 0; j < c; j++) {
+				skipSpaces();
+				if (peek() == '\n' || peek() == EOF)
+					throw error("expected " + c + " clues, found " + j);
+				int clue = readInt("a clue");
+				if (clue < -1 || clue > 4)
+					throw error("clue " + clue + " is not between -1 and 4");
+				clues[i * c + j] = (byte) clue;
+			}
+			endLine();
+		}
+		return new Puzzle(r, c, clues);
+	}
+	// Moves past blank lines, returning false if the stream ends first.
+	private boolean skipBlankLines() throws IOException {
+		while (true) {
+			skipSpaces();
+			int b = peek();
+			if (b == EOF)
+				return false;
+			if (b != '\n')
+				return true;
+			position++;
+			line++;
+		}
+	}
+	private int readInt(String what) throws IOException {
+		skipSpaces();
+		int b = peek();
+		boolean negative = b == '-';
+		if (negative) {
+			position++;
+			b = peek();
+		}
+		if (b < '0' || b > '9')
+			throw error("expected " + what + describe(b));
+		int value = 0;
+		while (b >= '0' && b <= '9') {
+			if (value > (Integer.MAX_VALUE - 9) / 10)
+				throw error("number is too big");
+			value = 10 * value + (b - '0');
+			position++;
+			b = peek();
+		}
+		if (b != EOF && b != '\n' && !isSpace(b))
+			throw error("expected a number" + describe(b));
+		return negative ? -value : value;
+	}
+	// Expects nothing but spaces up to the end of the line.
+	private void endLine() throws IOException {
+		skipSpaces();
+		int b = peek();
+		if (b == EOF)
+			return;
+		if (b != '\n')
+			throw error("expected the end of the line" + describe(b));
+		position++;
+		line++;
+	}
+	private void skipSpaces() throws IOException {
+		while (isSpace(peek())) {
+			position++;
+		}
+	}
+	private static boolean isSpace(int b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+	private int peek() throws IOException {
+		if (position == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return EOF;
+			}
+		}
+		return buffer[position] & 0xff;
+	}
+	private static String describe(int b) {
+		if (b == EOF)
+			return ", found the end of the file";
+		if (b == '\n')
+			return ", found the end of the line";
+		return ", found '" + (char) b + "'";
+	}
+	private IOException error(String message) {
+		return new IOException("line " + line + ": " + message);
+	}
+	public void close() throws IOException {
+		in.close();
+	}
+}
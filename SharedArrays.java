@@ -0,0 +1,116 @@
+import java.util.*;
+
+/*
+	Arrays that can be copied in O(1) and are then only copied a chunk at
+	a time, as each side writes to them.
+
+	The array is a table of fixed-size chunks, and each chunk remembers
+	which copy owns it. Copying shares the table and gives both sides a
+	new owner, so neither owns anything any more: the first write on
+	either side copies the table, and the first write to each chunk copies
+	just that chunk. A chunk that nobody owns is never written again, so
+	copies can go off to different threads.
+*/
+final class SharedIntArray {
+	private static final int SHIFT = 6, SIZE = 1 << SHIFT, MASK = SIZE - 1;
+	private static final int[] ZEROES = new int[SIZE]; // never written
+	private int[][] chunks;
+	private Object[] owners;
+	private boolean tableShared;
+	private Object owner = new Object();
+	SharedIntArray(int length) {
+		chunks = new int[(length + MASK) >>> SHIFT][];
+		owners = new Object[chunks.length];
+		Arrays.fill(chunks, ZEROES);
+	}
+	private SharedIntArray(SharedIntArray a) {
+		chunks = a.chunks;
+		owners = a.owners;
+		tableShared = true;
+		a.tableShared = true;
+		a.owner = new Object();
+	}
+	public SharedIntArray copy() {
+		return new SharedIntArray(this);
+	}
+	public int length() {
+		return chunks.length << SHIFT;
+	}
+	public int get(int i) {
+		return chunks[i >>> SHIFT][i & MASK];
+	}
+	public void set(int i, int value) {
+		writable(i >>> SHIFT)[i & MASK] = value;
+	}
+	public void add(int i, int delta) {
+		writable(i >>> SHIFT)[i & MASK] += delta;
+	}
+	// Makes room for at least length elements, keeping the ones we have.
+	public void grow(int length) {
+		if (length <= length())
+			return;
+		int n = Math.max((length + MASK) >>> SHIFT, 2 * chunks.length);
+		int old = chunks.length;
+		chunks = Arrays.copyOf(chunks, n);
+		owners = Arrays.copyOf(owners, n);
+		Arrays.fill(chunks, old, n, ZEROES);
+		tableShared = false;
+	}
+	private int[] writable(int chunk) {
+		if (owners[chunk] != owner) {
+			if (tableShared) {
+				chunks = chunks.clone();
+				owners = owners.clone();
+				tableShared = false;
+			}
+			chunks[chunk] = chunks[chunk].clone();
+			owners[chunk] = owner;
+		}
+		return chunks[chunk];
+	}
+}
+// Same as SharedIntArray, for longs.
+final class SharedLongArray {
+	private static final int SHIFT = 6, SIZE = 1 << SHIFT, MASK = SIZE - 1;
+	private static final long[] ZEROES = new long[SIZE]; // never written
+	private long[][] chunks;
+	private Object[] owners;
+	private boolean tableShared;
+	private Object owner = new Object();
+	SharedLongArray(int length) {
+		chunks = new long[(length + MASK) >>> SHIFT][];
+		owners = new Object[chunks.length];
+		Arrays.fill(chunks, ZEROES);
+	}
+	private SharedLongArray(SharedLongArray a) {
+		chunks = a.chunks;
+		owners = a.owners;
+		tableShared = true;
+		a.tableShared = true;
+		a.owner = new Object();
+	}
+	public SharedLongArray copy() {
+		return new SharedLongArray(this);
+	}
+	public long get(int i) {
+		return chunks[i >>> SHIFT][i & MASK];
+	}
+	public void or(int i, long bits) {
+		writable(i >>> SHIFT)[i & MASK] |= bits;
+	}
+	public void and(int i, long bits) {
+		writable(i >>> SHIFT)[i & MASK] &= bits;
+	}
+	private long[] writable(int chunk) {
+		if (owners[chunk] != owner) {
+			if (tableShared) {
+				chunks = chunks.clone();
+				owners = owners.clone();
+				tableShared = false;
+			}
+			chunks[chunk] = chunks[chunk].clone();
+			owners[chunk] = owner;
+		}
+		return chunks[chunk];
+	}
+}
@@ -1,28 +1,56 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 public class Slither {
-	static boolean humanPlay;
-	public static void main (String [] args) throws IOException {
+	public static void main (String [] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--batch")) {
+			if (args.length < 2) {
+				System.err.println(batchUsage());
+				return;
+			}
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			batchSlither(args[1], threads);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--count")) {
+			if (args.length < 2) {
+				System.err.println(countUsage());
+				return;
+			}
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			countSlither(args[1], threads);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--parallel")) {
+			if (args.length < 2) {
+				System.err.println(parallelUsage());
+				return;
+			}
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			parallelSlither(args[1], threads);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--serve")) {
+			int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+			int cacheSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+			// an optional fourth argument names a file to keep solutions in
+			SolutionCache solutions = args.length > 3 ? new SolutionCache(java.nio.file.Paths.get(args[3])) : null;
+			SolveServer server = new SolveServer(port, cacheSize, solutions);
+			server.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+			System.err.println("Solving puzzles POSTed to http://127.0.0.1:" + server.port() + "/solve");
+			return;
+		}
 		Scanner sc = new Scanner(System.in);
 		System.out.println(introduction());
 		String fileName = sc.next();
-		BufferedReader br = new BufferedReader(new FileReader(fileName));
-		String[] line = br.readLine().split(" ");
-		int r = Integer.parseInt(line[0]);
-		int c = Integer.parseInt(line[1]);
-		Board.setDimensions(r, c);
-		Board board = new Board();
-		for (int i = 0; i < r; i++) {
-			line = br.readLine().split(" ");
-			for (int j = 0; j < c; j++) {
-				Board.lineReqs[i][j] = new LineReq(Integer.parseInt(line[j]));
-			}
-		}
-		br.close();
+		PuzzleReader reader = new PuzzleReader(new FileInputStream(fileName));
+		Board board = new Board(reader.next());
+		reader.close();
 
 		System.out.println(humanQuery());
-		humanPlay = (sc.next().charAt(0) == 'H');
+		boolean humanPlay = (sc.next().charAt(0) == 'H');
 		if (humanPlay) {
 			humanSlither(sc, board);
 		} else {
@@ -41,23 +69,166 @@ public class Slither {
 			int r = sc.nextInt() - 1; // 0-indexing
 			int c = sc.nextInt() - 1;
 			Side side = Side.translate(sc.next().charAt(0));
-			board.state.mark(Wall.makeWall(r, c, side));
+			Wall wall = Wall.makeWall(r, c, side);
+			if (wall.isValid(board.puzzle) && !board.state.mark(wall)) {
+				System.out.println("You'll never end with a single continuous loop with a move like that.");
+			}
 		}
 	}
 	static void automatedSlither(Board board) {
-		BoardIntelligence boardIntelligence = new BoardIntelligence(board);
-		// AI ai = new AI();
-		LessGuesswork lg = new LessGuesswork(board);
-		lg.executeStaticIntuition();
-		while (true) {
-			System.out.println(board);
-			if (boardIntelligence.solved()) {
-				System.out.println("Congratulations! You solved it!");
-				break;
+		AI ai = new AI(board);
+		SolverStats stats = ai.enableStats();
+		boolean solved = ai.solve();
+		System.out.println(board);
+		System.out.println(solved ? "Solved!" : "This puzzle has no solution.");
+		System.out.print(stats);
+	}
+	/*
+		Solves every puzzle in the file ("-" for stdin) without asking any
+		questions. A PuzzleFile is read straight out of the mapped file by
+		each worker; a text file is read here and handed out as we go.
+	*/
+	static void batchSlither(String fileName, int threads) throws Exception {
+		if (!fileName.equals("-") && PuzzleFile.isPuzzleFile(fileName)) {
+			PuzzleFile file = new PuzzleFile(java.nio.file.Paths.get(fileName));
+			int[] next = {0};
+			try {
+				solveAll(() -> {
+					if (next[0] == file.size())
+						return null;
+					int index = next[0]++;
+					return () -> file.get(index);
+				}, threads);
+			} finally {
+				file.close();
 			}
-			Scanner sc = new Scanner(System.in);
-			int x = sc.nextInt();
+			return;
 		}
+		InputStream in = fileName.equals("-") ? System.in : new FileInputStream(fileName);
+		PuzzleReader reader = new PuzzleReader(in);
+		try {
+			solveAll(() -> {
+				Puzzle puzzle = reader.next();
+				return puzzle == null ? null : () -> puzzle;
+			}, threads);
+		} finally {
+			reader.close();
+		}
+	}
+	// Where solveAll() gets its puzzles: each one as a job that produces
+	// it on a worker, or null once there are no more.
+	interface PuzzleSource {
+		Callable<Puzzle> next() throws IOException;
+	}
+	/*
+		Hands the puzzles to a fixed pool of workers and writes the results
+		in input order. At most a few puzzles per worker are in flight at
+		once, so memory stays flat no matter how many there are.
+	*/
+	static void solveAll(PuzzleSource source, int threads) throws Exception {
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<String>> inFlight = new ArrayDeque<Future<String>>();
+		long start = System.nanoTime();
+		int count = 0;
+		try {
+			Callable<Puzzle> puzzle;
+			while ((puzzle = source.next()) != null) {
+				final Callable<Puzzle> job = puzzle;
+				inFlight.add(pool.submit(() -> solveToString(new Board(job.call()))));
+				count++;
+				if (inFlight.size() >= threads * 4) {
+					out.print(inFlight.poll().get());
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				out.print(inFlight.poll().get());
+			}
+		} finally {
+			pool.shutdownNow();
+			out.flush();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("Solved %d puzzles in %.3f s on %d threads (%.1f puzzles/sec)%n",
+			count, seconds, threads, count / seconds);
+	}
+	/*
+		Solves the first puzzle in the file with the sequential search and
+		then with ParallelAI, and reports how much faster the parallel one
+		was. Both are run once to warm up and then PARALLEL_RUNS times
+		each, and we compare the medians.
+
+		ParallelAI doesn't visit the tree in the same order as the
+		sequential search, so it can get lucky or unlucky even on one
+		core. With fewer cores than threads we say so, since then the
+		speedup is mostly that, not parallelism.
+	*/
+	static final int PARALLEL_RUNS = 7;
+	static void parallelSlither(String fileName, int threads) throws IOException {
+		PuzzleReader reader = new PuzzleReader(new FileInputStream(fileName));
+		Puzzle puzzle = reader.next();
+		reader.close();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long[] sequential = new long[PARALLEL_RUNS], parallel = new long[PARALLEL_RUNS];
+		Board board = null;
+		boolean solved = false;
+		for (int run = -1; run < PARALLEL_RUNS; run++) {
+			long start = System.nanoTime();
+			new AI(new Board(puzzle)).solve();
+			long elapsed = System.nanoTime() - start;
+			if (run >= 0)
+				sequential[run] = elapsed;
+			board = new Board(puzzle);
+			start = System.nanoTime();
+			solved = new ParallelAI(board, threads).solve(pool);
+			elapsed = System.nanoTime() - start;
+			if (run >= 0)
+				parallel[run] = elapsed;
+		}
+		pool.shutdown();
+		Arrays.sort(sequential);
+		Arrays.sort(parallel);
+		long s = sequential[PARALLEL_RUNS / 2], p = parallel[PARALLEL_RUNS / 2];
+		System.out.print(board);
+		System.out.println(solved ? "Solved!" : "This puzzle has no solution.");
+		System.out.printf("Median of %d runs: sequential %.3f ms, parallel on %d threads %.3f ms, speedup %.2fx%n",
+			PARALLEL_RUNS, s / 1e6, threads, p / 1e6, (double) s / p);
+		int cpus = Runtime.getRuntime().availableProcessors();
+		if (cpus < threads)
+			System.out.printf("Only %d CPU%s for %d threads: the speedup mostly comes from searching in a different order, not from running in parallel.%n",
+				cpus, cpus == 1 ? "" : "s", threads);
+	}
+	/*
+		Reports, for every puzzle in the file ("-" for stdin), whether it
+		has no solution, a unique one, or several. Each count stops at the
+		second solution it finds.
+	*/
+	static void countSlither(String fileName, int threads) throws IOException {
+		InputStream in = fileName.equals("-") ? System.in : new FileInputStream(fileName);
+		PuzzleReader reader = new PuzzleReader(in);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		Puzzle puzzle;
+		int n = 0;
+		while ((puzzle = reader.next()) != null) {
+			int count = new SolutionCounter(new Board(puzzle), threads).count(pool, 2);
+			String verdict = count == 0 ? "no solution" : count == 1 ? "unique solution" : "more than one solution";
+			System.out.println("Puzzle " + (++n) + " (" + puzzle.r + "x" + puzzle.c + "): " + verdict);
+		}
+		reader.close();
+		pool.shutdown();
+	}
+	static String solveToString(Board board) {
+		boolean solved = new AI(board).solve();
+		return board + (solved ? "Solved!" : "This puzzle has no solution.") + "\n\n";
+	}
+	static String batchUsage() {
+		return "Usage: java Slither --batch <file, a PuzzleFile, or - for stdin> [threads]";
+	}
+	static String countUsage() {
+		return "Usage: java Slither --count <file, or - for stdin> [threads]";
+	}
+	static String parallelUsage() {
+		return "Usage: java Slither --parallel <file> [threads]";
 	}
 	static String instructions() {
 		return 
@@ -0,0 +1,238 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+	Solutions kept on disk, shared by every board that is a rotation or
+	reflection of another.
+
+	Each puzzle is first turned into its canonical form: of its 8
+	rotations and reflections, the one with the fewest rows, then the
+	fewest columns, then the smallest clues read row by row. Solutions
+	are stored for the canonical form, keyed by a hash of it, and turned
+	back into the submitted puzzle's orientation when they're found.
+
+	The file is only ever appended to, and is mapped into memory:
+
+		int    magic ("SLSC")
+		int    version
+		long   where the next entry goes
+		...    entries, one after another
+
+	and each entry is
+
+		long   hash of the canonical puzzle
+		int    rows
+		int    cols
+		byte[] its clues
+		int    number of marked walls
+		int[]  their edge ids, in the canonical puzzle
+
+	An index from hash to entry is built in memory when the file is
+	opened. The clues are checked on every hit, so a hash collision is
+	only ever a miss.
+*/
+class SolutionCache implements Closeable {
+	static final int MAGIC = 0x534c5343;
+	static final int VERSION = 1;
+	private static final int HEADER = 16;
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int end;
+	private final Map<Long, Integer> index = new HashMap<Long, Integer>();
+
+	SolutionCache(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		boolean fresh = channel.size() == 0;
+		map(Math.max(channel.size(), 1 << 20));
+		if (fresh) {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			setEnd(HEADER);
+		} else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			channel.close();
+			throw new IOException(path + " is not a solution cache");
+		}
+		end = (int) buffer.getLong(8);
+		for (int at = HEADER; at < end; ) {
+			index.put(buffer.getLong(at), at);
+			int cells = buffer.getInt(at + 8) * buffer.getInt(at + 12);
+			int walls = buffer.getInt(at + 16 + cells);
+			at += 20 + cells + 4 * walls;
+		}
+	}
+	private void map(long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("solution cache is full");
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+	private void setEnd(int end) {
+		this.end = end;
+		buffer.putLong(8, end);
+	}
+	// The marked walls of puzzle's solution, or null if we don't have it.
+	public synchronized int[] get(Puzzle puzzle) {
+		Canonical canonical = new Canonical(puzzle);
+		Integer at = index.get(canonical.hash);
+		if (at == null || !canonical.matches(buffer, at))
+			return null;
+		int walls = at + 16 + canonical.clues.length;
+		int[] edges = new int[buffer.getInt(walls)];
+		for (int i = 0; i < edges.length; i++) {
+			edges[i] = canonical.toPuzzle(buffer.getInt(walls + 4 + 4 * i));
+		}
+		return edges;
+	}
+	// edges are the marked walls of a solution of puzzle.
+	public synchronized void put(Puzzle puzzle, int[] edges) throws IOException {
+		Canonical canonical = new Canonical(puzzle);
+		if (index.containsKey(canonical.hash) && canonical.matches(buffer, index.get(canonical.hash)))
+			return;
+		int size = 20 + canonical.clues.length + 4 * edges.length;
+		if (end + size > buffer.capacity())
+			map(Math.max(2L * buffer.capacity(), (long) end + size));
+		int at = end;
+		buffer.putLong(at, canonical.hash);
+		buffer.putInt(at + 8, canonical.r);
+		buffer.putInt(at + 12, canonical.c);
+		buffer.put(at + 16, canonical.clues);
+		int walls = at + 16 + canonical.clues.length;
+		buffer.putInt(walls, edges.length);
+		for (int i = 0; i < edges.length; i++) {
+			buffer.putInt(walls + 4 + 4 * i, canonical.fromPuzzle(edges[i]));
+		}
+		// the entry is only there once the header says so
+		setEnd(at + size);
+		index.put(canonical.hash, at);
+	}
+	public synchronized int size() {
+		return index.size();
+	}
+	public synchronized void close() throws IOException {
+		buffer.force();
+		channel.truncate(end);
+		channel.close();
+	}
+
+	/*
+		A puzzle's canonical form, and the symmetry that takes the puzzle
+		to it. Positions are in doubled coordinates (see Puzzle.edgeAt),
+		which every symmetry maps onto themselves: symmetry bit 4 swaps
+		rows and columns, then bit 1 flips the rows and bit 2 the columns.
+	*/
+	static final class Canonical {
+		final Puzzle puzzle;
+		final int symmetry;
+		final int r, c;
+		final byte[] clues;
+		final long hash;
+		Canonical(Puzzle puzzle) {
+			this.puzzle = puzzle;
+			int best = 0;
+			byte[] bestClues = transform(puzzle, 0);
+			for (int s = 1; s < 8; s++) {
+				byte[] clues = transform(puzzle, s);
+				if (compare(rows(puzzle, s), cols(puzzle, s), clues, rows(puzzle, best), cols(puzzle, best), bestClues) < 0) {
+					best = s;
+					bestClues = clues;
+				}
+			}
+			symmetry = best;
+			r = rows(puzzle, best);
+			c = cols(puzzle, best);
+			clues = bestClues;
+			long h = 0x5117e4L;
+			h = mix(h, r);
+			h = mix(h, c);
+			for (byte clue : clues) {
+				h = mix(h, clue);
+			}
+			hash = h ^ (h >>> 31);
+		}
+		private static long mix(long h, int value) {
+			h = (h ^ value) * 0x9E3779B97F4A7C15L;
+			return h ^ (h >>> 29);
+		}
+		private static int rows(Puzzle puzzle, int s) {
+			return (s & 4) != 0 ? puzzle.c : puzzle.r;
+		}
+		private static int cols(Puzzle puzzle, int s) {
+			return (s & 4) != 0 ? puzzle.r : puzzle.c;
+		}
+		private static byte[] transform(Puzzle puzzle, int s) {
+			int cols = cols(puzzle, s);
+			byte[] clues = new byte[puzzle.cellCount];
+			for (int i = 0; i < puzzle.r; i++) {
+				for (int j = 0; j < puzzle.c; j++) {
+					int to = forward(s, 2 * i + 1, 2 * j + 1, 2 * puzzle.r, 2 * puzzle.c);
+					clues[((to >>> 16) / 2) * cols + (to & 0xffff) / 2] = (byte) puzzle.clue(i, j);
+				}
+			}
+			return clues;
+		}
+		private static int compare(int r1, int c1, byte[] a, int r2, int c2, byte[] b) {
+			if (r1 != r2)
+				return r1 - r2;
+			if (c1 != c2)
+				return c1 - c2;
+			return Arrays.compare(a, b);
+		}
+		// (y, x) on a board h by w, packed as y << 16 | x once moved.
+		private static int forward(int s, int y, int x, int h, int w) {
+			if ((s & 4) != 0) {
+				int t = y; y = x; x = t;
+				t = h; h = w; w = t;
+			}
+			if ((s & 1) != 0)
+				y = h - y;
+			if ((s & 2) != 0)
+				x = w - x;
+			return y << 16 | x;
+		}
+		// Undoes forward(), for (y, x) on the moved board, h by w.
+		private static int backward(int s, int y, int x, int h, int w) {
+			if ((s & 2) != 0)
+				x = w - x;
+			if ((s & 1) != 0)
+				y = h - y;
+			if ((s & 4) != 0) {
+				int t = y; y = x; x = t;
+			}
+			return y << 16 | x;
+		}
+		int fromPuzzle(int e) {
+			int at = position(puzzle.r, puzzle.c, e);
+			int to = forward(symmetry, at >>> 16, at & 0xffff, 2 * puzzle.r, 2 * puzzle.c);
+			return edgeAt(r, c, to >>> 16, to & 0xffff);
+		}
+		int toPuzzle(int e) {
+			int at = position(r, c, e);
+			int to = backward(symmetry, at >>> 16, at & 0xffff, 2 * r, 2 * c);
+			return puzzle.edgeAt(to >>> 16, to & 0xffff);
+		}
+		// Edge ids as Puzzle numbers them, for a board of any shape.
+		private static int position(int r, int c, int e) {
+			int topCount = (r + 1) * c;
+			if (e < topCount)
+				return (2 * (e / c)) << 16 | (2 * (e % c) + 1);
+			e -= topCount;
+			return (2 * (e / (c + 1)) + 1) << 16 | (2 * (e % (c + 1)));
+		}
+		private static int edgeAt(int r, int c, int y, int x) {
+			if ((y & 1) == 0)
+				return (y / 2) * c + x / 2;
+			return (r + 1) * c + (y / 2) * (c + 1) + x / 2;
+		}
+		boolean matches(ByteBuffer buffer, int at) {
+			if (buffer.getLong(at) != hash || buffer.getInt(at + 8) != r || buffer.getInt(at + 12) != c)
+				return false;
+			for (int i = 0; i < clues.length; i++) {
+				if (buffer.get(at + 16 + i) != clues[i])
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/*
+	Tells whether a puzzle has no solution, exactly one, or more, using
+	the same propagation as the solver. The top of the tree is split into
+	ForkJoin tasks the way ParallelAI does it. Mark and eliminate
+	branches never share a solution, so each task counts its own subtree
+	and adds the result to a shared total. Once the total reaches the
+	limit, every task stops.
+*/
+class SolutionCounter extends SplitSearch {
+	private int limit;
+	private final AtomicInteger found = new AtomicInteger();
+	SolutionCounter(Board board, int parallelism) {
+		super(board, parallelism);
+	}
+	// Counts up to limit solutions (2 is enough to tell unique from not);
+	// the board itself is left untouched.
+	public int count(ForkJoinPool pool, int limit) {
+		this.limit = limit;
+		found.set(0);
+		stop.set(false);
+		State root = new State(board.state);
+		if (!new LessGuesswork(new Board(puzzle, root)).executeStaticIntuition())
+			return 0;
+		pool.invoke(new Branch(root, 0));
+		return Math.min(found.get(), limit);
+	}
+	void searchBelow(AI ai, State state) {
+		add(ai.count(limit));
+	}
+	void leaf(State state, boolean solved) {
+		add(solved ? 1 : 0);
+	}
+	private void add(int n) {
+		if (n > 0 && found.addAndGet(n) >= limit)
+			stop.set(true);
+	}
+}
@@ -0,0 +1,220 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.sun.net.httpserver.*;
+
+/*
+	A long-lived solver for other processes to talk to, so that they
+	don't pay for a JVM start per puzzle. It listens on loopback only:
+
+		curl --data-binary @puzzle.txt 'http://127.0.0.1:8080/solve?timeout=2000'
+
+	takes one puzzle in the Slither.in format and answers with one of
+	"solved", "unsolvable" or "timed out" on the first line. A solved
+	puzzle is followed by its marked walls, one "row col T" or
+	"row col L" per line, numbered from 1 the way moves are typed in. A
+	timed out one is followed by the walls we could prove anyway.
+
+	Boards of more than MAX_CELLS cells are refused with a 413 before
+	anything is allocated for them. Every request runs on a thread of
+	its own (a virtual thread where the JVM has them) and gives up at
+	its deadline. The most recent answers are kept, up to cacheSize of
+	them and MAX_CACHED_CELLS cells' worth, since an answer grows with
+	its board, so sending the same puzzle again costs only the lookup.
+	Given a SolutionCache, solutions also outlive the server and are
+	found for any rotation or reflection of a puzzle solved before.
+*/
+class SolveServer {
+	static final long DEFAULT_TIMEOUT = 10000; // ms
+	static final int MAX_CELLS = 250000; // a 500x500 board
+	static final long MAX_CACHED_CELLS = 16L * MAX_CELLS;
+	private final HttpServer server;
+	private final ExecutorService workers = workers();
+	// least recently used first; guarded by this
+	private final LinkedHashMap<Key, String> cache = new LinkedHashMap<Key, String>(16, 0.75f, true);
+	private final int cacheSize;
+	private long cachedCells;
+	private final SolutionCache solutions; // may be null
+	private final AtomicLong requests = new AtomicLong(), hits = new AtomicLong();
+
+	SolveServer(int port, int cacheSize, SolutionCache solutions) throws IOException {
+		this.solutions = solutions;
+		this.cacheSize = cacheSize;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/solve", this::handle);
+		server.setExecutor(workers);
+	}
+	public void start() {
+		server.start();
+	}
+	public void stop() {
+		server.stop(0);
+		workers.shutdownNow();
+		try {
+			if (solutions != null)
+				solutions.close();
+		} catch (IOException e) {
+			System.err.println("Couldn't close the solution cache: " + e.getMessage());
+		}
+	}
+	public int port() {
+		return server.getAddress().getPort();
+	}
+	// Java 21's virtual threads if we have them, plain threads if not.
+	private static ExecutorService workers() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				reply(exchange, 405, "POST a puzzle to /solve\n");
+				return;
+			}
+			long timeout = DEFAULT_TIMEOUT;
+			Puzzle puzzle;
+			try {
+				String value = parameters(exchange.getRequestURI().getRawQuery()).get("timeout");
+				if (value != null)
+					timeout = Long.parseLong(value);
+				puzzle = new PuzzleReader(exchange.getRequestBody(), MAX_CELLS).next();
+				if (puzzle == null)
+					throw new IOException("no puzzle");
+			} catch (PuzzleReader.TooBigException e) {
+				reply(exchange, 413, e.getMessage() + "\n");
+				return;
+			} catch (IOException | IllegalArgumentException e) {
+				reply(exchange, 400, e.getMessage() + "\n");
+				return;
+			}
+			reply(exchange, 200, solve(puzzle, timeout));
+		} finally {
+			exchange.close();
+		}
+	}
+	// The name=value pairs of a raw query string; a bare name maps to "".
+	static Map<String, String> parameters(String query) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null)
+			return parameters;
+		for (String pair : query.split("&")) {
+			if (pair.isEmpty())
+				continue;
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return parameters;
+	}
+	String solve(Puzzle puzzle, long timeout) {
+		requests.incrementAndGet();
+		Key key = new Key(puzzle);
+		String answer = cached(key);
+		if (answer != null) {
+			hits.incrementAndGet();
+			return answer;
+		}
+		int[] known = solutions == null ? null : solutions.get(puzzle);
+		if (known != null) {
+			hits.incrementAndGet();
+			answer = "solved\n" + walls(puzzle, known);
+			remember(key, answer);
+			return answer;
+		}
+		Board board = new Board(puzzle);
+		SolveResult result = new AI(board, Budget.millis(timeout), new TranspositionTable(14)).attempt();
+		if (result.status == SolveResult.Status.TIMED_OUT) {
+			// might still have an answer, so don't remember this
+			return "timed out\n" + walls(puzzle, markedEdges(board));
+		}
+		if (result.status == SolveResult.Status.SOLVED) {
+			int[] edges = markedEdges(board);
+			answer = "solved\n" + walls(puzzle, edges);
+			if (solutions != null) {
+				try {
+					solutions.put(puzzle, edges);
+				} catch (IOException e) {
+					System.err.println("Couldn't save a solution: " + e.getMessage());
+				}
+			}
+		} else {
+			answer = "unsolvable\n";
+		}
+		remember(key, answer);
+		return answer;
+	}
+	private synchronized String cached(Key key) {
+		return cache.get(key);
+	}
+	private synchronized void remember(Key key, String answer) {
+		if (cache.put(key, answer) == null)
+			cachedCells += key.clues.length;
+		Iterator<Key> eldest = cache.keySet().iterator();
+		while (cache.size() > cacheSize || cachedCells > MAX_CACHED_CELLS) {
+			cachedCells -= eldest.next().clues.length;
+			eldest.remove();
+		}
+	}
+	/*
+		What the cache knows a puzzle by: its shape and a copy of its
+		clues, a byte per cell, rather than the Puzzle with all the tables
+		it builds for solving.
+	*/
+	static final class Key {
+		final int r, c;
+		final byte[] clues;
+		private final int hash;
+		Key(Puzzle puzzle) {
+			r = puzzle.r;
+			c = puzzle.c;
+			clues = new byte[puzzle.cellCount];
+			for (int cell = 0; cell < clues.length; cell++) {
+				clues[cell] = (byte) puzzle.clue(cell);
+			}
+			hash = 31 * (31 * r + c) + Arrays.hashCode(clues);
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key key = (Key) o;
+			return r == key.r && c == key.c && Arrays.equals(clues, key.clues);
+		}
+	}
+	private static int[] markedEdges(Board board) {
+		int[] edges = new int[board.state.markedCount()];
+		for (int e = 0, n = 0; e < board.puzzle.edgeCount; e++) {
+			if (board.state.isMarked(e))
+				edges[n++] = e;
+		}
+		return edges;
+	}
+	private static String walls(Puzzle puzzle, int[] edges) {
+		StringBuilder sb = new StringBuilder();
+		for (int e : edges) {
+			Wall w = puzzle.wall(e);
+			sb.append((w.r + 1) + " " + (w.c + 1) + (w.vertical ? " L" : " T") + "\n");
+		}
+		return sb.toString();
+	}
+	private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+	public String toString() {
+		return requests.get() + " requests, " + hits.get() + " answered from the cache";
+	}
+}
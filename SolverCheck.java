@@ -0,0 +1,211 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+	Checks every way we have of solving and counting against brute force,
+	on boards of up to 4x4 cells where all the loops can be listed.
+
+	A single loop is the outline of the cells inside it, so we try every
+	set of cells and keep the ones whose outline has two walls or none at
+	every corner and is all one piece. A puzzle then has exactly as many
+	solutions as there are loops meeting its clues.
+
+	We check the regression cases below, every empty board, and then
+	random boards, half of them made from a loop so that they have a
+	solution, against AI.solve(), AI.countSolutions(), SolutionCounter
+	and ParallelAI. Last, we make sure that puzzles from Generator really
+	have only the one solution. Every disagreement is printed.
+
+		java SolverCheck [boards] [seed]
+*/
+class SolverCheck {
+	// Puzzles that have been answered wrongly before, in the Slither.in format.
+	static final String[] REGRESSIONS = {
+		// the example from Slither's introduction
+		"2 2\n3 3\n-1 -1\n",
+		// nothing is decided before the first guess, so the board hashes to 0,
+		// which the dead end table once took for an empty slot
+		"3 3\n-1 -1 -1\n-1 2 -1\n-1 -1 -1\n",
+		"2 3\n-1 -1 -1\n-1 -1 -1\n",
+		// two 3s side by side whose outline is a loop by itself
+		"2 2\n1 2\n3 3\n",
+		"3 3\n-1 3 3\n-1 -1 -1\n-1 -1 -1\n",
+		"3 4\n-1 3 -1 -1\n-1 3 -1 -1\n-1 -1 -1 0\n",
+	};
+	static final int MAX_SIDE = 4;
+	static final int COUNT_LIMIT = 3;
+	private static final Map<String, long[]> loops = new HashMap<String, long[]>();
+	private static int checked, wrong;
+
+	public static void main(String[] args) throws Exception {
+		int boards = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		ForkJoinPool pool = new ForkJoinPool(2);
+		for (String text : REGRESSIONS) {
+			PuzzleReader reader = new PuzzleReader(new ByteArrayInputStream(text.getBytes()));
+			check(reader.next(), pool);
+			reader.close();
+		}
+		for (int r = 1; r <= MAX_SIDE; r++) {
+			for (int c = 1; c <= MAX_SIDE; c++) {
+				byte[] clues = new byte[r * c];
+				Arrays.fill(clues, (byte) -1);
+				Puzzle puzzle = new Puzzle(r, c, clues);
+				check(puzzle, pool);
+				int all = new AI(new Board(puzzle)).countSolutions(Integer.MAX_VALUE);
+				if (all != loops(r, c).length)
+					report(puzzle, "countSolutions found " + all + " loops, not " + loops(r, c).length);
+			}
+		}
+		Random random = new Random(seed);
+		for (int i = 0; i < boards; i++) {
+			check(randomPuzzle(random), pool);
+		}
+		for (int i = 0; i < boards / 10; i++) {
+			int r = 1 + random.nextInt(MAX_SIDE), c = 1 + random.nextInt(MAX_SIDE);
+			Puzzle puzzle = Generator.generate(r, c, random.nextLong());
+			checked++;
+			if (solutions(puzzle, 2) != 1)
+				report(puzzle, "Generator made it, but it doesn't have a unique solution");
+		}
+		pool.shutdown();
+		System.out.println("Checked " + checked + " puzzles, " + wrong + " answered wrongly");
+		if (wrong > 0)
+			System.exit(1);
+	}
+	static Puzzle randomPuzzle(Random random) {
+		int r = 1 + random.nextInt(MAX_SIDE), c = 1 + random.nextInt(MAX_SIDE);
+		byte[] clues = new byte[r * c];
+		Puzzle shape = new Puzzle(r, c, clues);
+		long[] all = loops(r, c);
+		long loop = all[random.nextInt(all.length)];
+		boolean fromLoop = random.nextBoolean();
+		double shown = 0.2 + 0.6 * random.nextDouble();
+		for (int cell = 0; cell < clues.length; cell++) {
+			if (random.nextDouble() >= shown)
+				clues[cell] = -1;
+			else if (fromLoop)
+				clues[cell] = (byte) Long.bitCount(loop & cellMask(shape, cell));
+			else
+				clues[cell] = (byte) random.nextInt(5);
+		}
+		return new Puzzle(r, c, clues);
+	}
+	static void check(Puzzle puzzle, ForkJoinPool pool) {
+		checked++;
+		int expected = solutions(puzzle, COUNT_LIMIT);
+
+		Board board = new Board(puzzle);
+		boolean solved = new AI(board).solve();
+		if (solved != (expected > 0) || (solved && !isSolution(puzzle, board.state)))
+			report(puzzle, "AI.solve() said " + (solved ? "solved" : "no solution") + describe(board, solved));
+
+		int counted = new AI(new Board(puzzle)).countSolutions(COUNT_LIMIT);
+		if (counted != expected)
+			report(puzzle, "AI.countSolutions() found " + counted + ", not " + expected);
+
+		int unique = new SolutionCounter(new Board(puzzle), pool.getParallelism()).count(pool, 2);
+		if (unique != Math.min(expected, 2))
+			report(puzzle, "SolutionCounter found " + unique + ", not " + Math.min(expected, 2));
+
+		board = new Board(puzzle);
+		solved = new ParallelAI(board, pool.getParallelism()).solve(pool);
+		if (solved != (expected > 0) || (solved && !isSolution(puzzle, board.state)))
+			report(puzzle, "ParallelAI said " + (solved ? "solved" : "no solution") + describe(board, solved));
+	}
+	static String describe(Board board, boolean solved) {
+		return solved ? ":\n" + board : "";
+	}
+	static void report(Puzzle puzzle, String what) {
+		wrong++;
+		System.out.print(puzzle);
+		System.out.println(what + " (brute force: " + solutions(puzzle, Integer.MAX_VALUE) + " solutions)");
+		System.out.println();
+	}
+	// How many loops meet the puzzle's clues, stopping at limit.
+	static int solutions(Puzzle puzzle, int limit) {
+		int found = 0;
+		for (long loop : loops(puzzle.r, puzzle.c)) {
+			if (meetsClues(puzzle, loop) && ++found == limit)
+				break;
+		}
+		return found;
+	}
+	static boolean isSolution(Puzzle puzzle, State state) {
+		long walls = 0;
+		for (int e = 0; e < puzzle.edgeCount; e++) {
+			if (state.isMarked(e))
+				walls |= 1L << e;
+		}
+		return meetsClues(puzzle, walls) && Arrays.binarySearch(loops(puzzle.r, puzzle.c), walls) >= 0;
+	}
+	static boolean meetsClues(Puzzle puzzle, long walls) {
+		for (int cell = 0; cell < puzzle.cellCount; cell++) {
+			int clue = puzzle.clue(cell);
+			if (clue >= 0 && Long.bitCount(walls & cellMask(puzzle, cell)) != clue)
+				return false;
+		}
+		return true;
+	}
+	static long cellMask(Puzzle puzzle, int cell) {
+		long mask = 0;
+		for (int side = 0; side < 4; side++) {
+			mask |= 1L << puzzle.cellEdge(cell, side);
+		}
+		return mask;
+	}
+	// Every loop on an r by c board as a bitmask of edge ids, sorted.
+	static long[] loops(int r, int c) {
+		String shape = r + "x" + c;
+		long[] found = loops.get(shape);
+		if (found != null)
+			return found;
+		Puzzle puzzle = new Puzzle(r, c, new byte[r * c]);
+		long[] outlines = new long[1 << puzzle.cellCount];
+		int n = 0;
+		for (int inside = 1; inside < outlines.length; inside++) {
+			long outline = 0;
+			for (int cell = 0; cell < puzzle.cellCount; cell++) {
+				if ((inside & (1 << cell)) != 0)
+					outline ^= cellMask(puzzle, cell);
+			}
+			if (isLoop(puzzle, outline))
+				outlines[n++] = outline;
+		}
+		found = Arrays.copyOf(outlines, n);
+		Arrays.sort(found);
+		loops.put(shape, found);
+		return found;
+	}
+	// Whether walls meet two at a time at every corner and make one piece.
+	static boolean isLoop(Puzzle puzzle, long walls) {
+		for (int v = 0; v < puzzle.vertexCount; v++) {
+			if (degree(puzzle, walls, v) == 4)
+				return false;
+		}
+		int first = Long.numberOfTrailingZeros(walls), e = first, v = puzzle.edgeEnd(first, 0);
+		int length = 0;
+		do {
+			length++;
+			v = puzzle.edgeEnd(e, 0) == v ? puzzle.edgeEnd(e, 1) : puzzle.edgeEnd(e, 0);
+			for (int i = 0; i < 4; i++) {
+				int f = puzzle.vertexEdge(v, i);
+				if (f >= 0 && f != e && (walls & (1L << f)) != 0) {
+					e = f;
+					break;
+				}
+			}
+		} while (e != first);
+		return length == Long.bitCount(walls);
+	}
+	private static int degree(Puzzle puzzle, long walls, int v) {
+		int degree = 0;
+		for (int i = 0; i < 4; i++) {
+			int e = puzzle.vertexEdge(v, i);
+			if (e >= 0 && (walls & (1L << e)) != 0)
+				degree++;
+		}
+		return degree;
+	}
+}
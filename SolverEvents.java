@@ -0,0 +1,33 @@
+import jdk.jfr.*;
+
+/*
+	Flight Recorder events for the solver. They cost next to nothing
+	unless a recording has them enabled, e.g.
+
+		java -XX:StartFlightRecording:filename=solve.jfr Slither --batch Slither.in
+*/
+@Name("slither.Solve")
+@Label("Solve")
+@Category("Slither")
+@Description("One AI.solve() call, with the solver's counters")
+class SolveEvent extends Event {
+	@Label("Rows") int rows;
+	@Label("Columns") int cols;
+	@Label("Solved") boolean solved;
+	@Label("Decisions") long decisions;
+	@Label("Backtracks") long backtracks;
+	@Label("Contradictions") long contradictions;
+	@Label("Rejected Marks") long rejectedMarks;
+	@Label("Propagations") long propagations;
+	@Label("Max Depth") int maxDepth;
+}
+
+@Name("slither.SolvePhase")
+@Label("Solve Phase")
+@Category("Slither")
+@Description("Time spent in one phase of AI.solve()")
+class SolvePhaseEvent extends Event {
+	@Label("Phase") String phase;
+	@Label("Rows") int rows;
+	@Label("Columns") int cols;
+}
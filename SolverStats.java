@@ -0,0 +1,55 @@
+/*
+	What the solver did on one board: how often it guessed, what each
+	propagation rule deduced, how many times it hit a contradiction or had
+	to back up, how deep it went, and how long each phase took.
+
+	Counting is off unless someone asks for it with AI.enableStats() (or
+	records the slither.Solve JFR event). Every counting site is a single
+	null check when it's off.
+*/
+class SolverStats {
+	enum Rule { CELL_CLUE, CORNER, PATTERN, COLORING }
+	enum Phase { STATIC_INTUITION, SEARCH }
+
+	long decisions;
+	long backtracks;
+	long contradictions; // found by LessGuesswork
+	long rejectedMarks; // refused by State.mark
+	int maxDepth;
+	final long[] propagations = new long[Rule.values().length];
+	final long[] patterns = new long[Patterns.NAMES.length]; // PATTERN, split up
+	final long[] phaseNanos = new long[Phase.values().length];
+
+	void deduced(Rule rule, int pattern) {
+		propagations[rule.ordinal()]++;
+		if (pattern >= 0)
+			patterns[pattern]++;
+	}
+	public long totalPropagations() {
+		long total = 0;
+		for (long n : propagations) {
+			total += n;
+		}
+		return total;
+	}
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("decisions: " + decisions + ", backtracks: " + backtracks + ", max depth: " + maxDepth + "\n");
+		sb.append("contradictions: " + contradictions + ", rejected marks: " + rejectedMarks + "\n");
+		sb.append("propagations:");
+		for (Rule rule : Rule.values()) {
+			sb.append(" " + rule.name().toLowerCase() + "=" + propagations[rule.ordinal()]);
+		}
+		sb.append("\n");
+		sb.append("patterns:");
+		for (int i = 0; i < patterns.length; i++) {
+			sb.append(" " + Patterns.NAMES[i].replace(' ', '_') + "=" + patterns[i]);
+		}
+		sb.append("\n");
+		for (Phase phase : Phase.values()) {
+			sb.append(phase.name().toLowerCase() + ": " + String.format("%.3f ms", phaseNanos[phase.ordinal()] / 1e6) + "\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,60 @@
+import java.util.*;
+
+/*
+	Remembers the Zobrist hashes of partial boards the search has already
+	proven can't be finished, so that reaching the same marks and
+	eliminations in a different order costs one lookup instead of a whole
+	subtree.
+
+	The table has a fixed size. Each bucket holds two entries: the first
+	keeps whichever dead board took the most work to refute, and the
+	second always takes the newest one. Expensive refutations survive and
+	recent ones still get a chance to be reused. Slots say for themselves
+	whether they're in use: any hash can come up, 0 included, since
+	that's the hash of a board with nothing decided.
+*/
+class TranspositionTable {
+	private final long[] keys;
+	private final int[] work;
+	private final boolean[] used;
+	private final int mask;
+	TranspositionTable(int log2Buckets) {
+		keys = new long[2 << log2Buckets];
+		work = new int[keys.length];
+		used = new boolean[keys.length];
+		mask = (1 << log2Buckets) - 1;
+	}
+	// Dead ends belong to one puzzle; this readies the table for another.
+	public void clear() {
+		Arrays.fill(used, false);
+	}
+	public boolean contains(long hash) {
+		int slot = bucket(hash);
+		return holds(slot, hash) || holds(slot+1, hash);
+	}
+	public void store(long hash, long effort) {
+		int slot = bucket(hash);
+		int w = (int) Math.min(effort, Integer.MAX_VALUE);
+		if (holds(slot, hash) || holds(slot+1, hash))
+			return;
+		if (!used[slot] || w >= work[slot]) {
+			// demote the old deep entry to the always-replace slot
+			keys[slot+1] = keys[slot];
+			work[slot+1] = work[slot];
+			used[slot+1] = used[slot];
+			keys[slot] = hash;
+			work[slot] = w;
+			used[slot] = true;
+		} else {
+			keys[slot+1] = hash;
+			work[slot+1] = w;
+			used[slot+1] = true;
+		}
+	}
+	private boolean holds(int slot, long hash) {
+		return used[slot] && keys[slot] == hash;
+	}
+	private int bucket(long hash) {
+		return (int) ((hash ^ (hash >>> 32)) & mask) << 1;
+	}
+}